@@ -0,0 +1,112 @@
+package com.heavyplayer.tooltip.benchmarks;
+
+import com.heavyplayer.tooltip.core.PlacementSolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of placing one tooltip, ie. the solver work done per tooltip per frame, over random targets
+ * and display sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlacementSolverBenchmark {
+    // Power of two, so the scenario index can be masked.
+    private static final int SCENARIOS = 1 << 20;
+
+    private final PlacementSolver mSolver = new PlacementSolver();
+
+    // Each scenario is a display size, a target and a balloon size.
+    private int[] mDisplayWidths, mDisplayHeights;
+    private int[] mTargetLefts, mTargetTops, mTargetRights, mTargetBottoms;
+    private int[] mBalloonWidths, mBalloonHeights;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        mDisplayWidths = new int[SCENARIOS];
+        mDisplayHeights = new int[SCENARIOS];
+        mTargetLefts = new int[SCENARIOS];
+        mTargetTops = new int[SCENARIOS];
+        mTargetRights = new int[SCENARIOS];
+        mTargetBottoms = new int[SCENARIOS];
+        mBalloonWidths = new int[SCENARIOS];
+        mBalloonHeights = new int[SCENARIOS];
+
+        for(int i = 0; i < SCENARIOS; i++) {
+            int displayWidth = 240 + random.nextInt(2320);
+            int displayHeight = 320 + random.nextInt(2240);
+            mDisplayWidths[i] = displayWidth;
+            mDisplayHeights[i] = displayHeight;
+
+            // Let targets go partially off screen, as they do while scrolling.
+            int targetLeft = random.nextInt(displayWidth + 200) - 100;
+            int targetTop = random.nextInt(displayHeight + 200) - 100;
+            mTargetLefts[i] = targetLeft;
+            mTargetTops[i] = targetTop;
+            mTargetRights[i] = targetLeft + 1 + random.nextInt(displayWidth / 2);
+            mTargetBottoms[i] = targetTop + 1 + random.nextInt(displayHeight / 4);
+
+            mBalloonWidths[i] = 40 + random.nextInt(displayWidth - 40);
+            mBalloonHeights[i] = 30 + random.nextInt(displayHeight / 3);
+        }
+
+        mSolver.setArrowSize(40, 20);
+        mSolver.setRoundedCornersRadii(8);
+    }
+
+    @Benchmark
+    public int solve() {
+        int i = mIndex = (mIndex + 1) & (SCENARIOS - 1);
+
+        PlacementSolver solver = mSolver;
+        solver.setDisplaySize(mDisplayWidths[i], mDisplayHeights[i]);
+        solver.setTarget(mTargetLefts[i], mTargetTops[i], mTargetRights[i], mTargetBottoms[i]);
+        solver.setBalloonSize(mBalloonWidths[i], mBalloonHeights[i]);
+
+        int gravity = solver.solveGravity();
+        solver.solvePosition();
+        if(gravity == PlacementSolver.TOP || gravity == PlacementSolver.BOTTOM)
+            solver.solveLayout(mBalloonWidths[i], mBalloonHeights[i] + 20);
+        else
+            solver.solveLayout(mBalloonWidths[i] + 20, mBalloonHeights[i]);
+
+        return solver.getBalloonLeft() + solver.getBalloonTop() + solver.getArrowLeft() + solver.getArrowTop();
+    }
+
+    @Benchmark
+    public int solveCandidates() {
+        int i = mIndex = (mIndex + 1) & (SCENARIOS - 1);
+
+        PlacementSolver solver = mSolver;
+        solver.setDisplaySize(mDisplayWidths[i], mDisplayHeights[i]);
+        solver.setTarget(mTargetLefts[i], mTargetTops[i], mTargetRights[i], mTargetBottoms[i]);
+        solver.setBalloonSize(mBalloonWidths[i], mBalloonHeights[i]);
+
+        int gravity = solver.solve(0);
+        if(gravity == PlacementSolver.TOP || gravity == PlacementSolver.BOTTOM)
+            solver.solveLayout(mBalloonWidths[i], mBalloonHeights[i] + 20);
+        else
+            solver.solveLayout(mBalloonWidths[i] + 20, mBalloonHeights[i]);
+
+        return solver.getBalloonLeft() + solver.getBalloonTop() + solver.getArrowLeft() + solver.getArrowTop();
+    }
+}
@@ -0,0 +1,41 @@
+package com.heavyplayer.tooltip;
+
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+
+public class TooltipPoolTest extends ActivityInstrumentationTestCase2<ButtonsActivity> {
+    public TooltipPoolTest() {
+        super(ButtonsActivity.class);
+    }
+
+    public void testRecycleCancelsPendingShow() throws Throwable {
+        final ButtonsActivity activity = getActivity();
+        final Tooltip[] tooltips = new Tooltip[2];
+        final Tooltip.PendingShow[] pendingShows = new Tooltip.PendingShow[1];
+
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                TooltipPool pool = TooltipPool.get(activity);
+                tooltips[0] = pool.obtain();
+                tooltips[0].setTarget(activity.findViewById(R.id.container));
+                // Never measured before, so the show waits for the text to be measured in the background.
+                tooltips[0].setText("Pending " + SystemClock.uptimeMillis());
+                pendingShows[0] = tooltips[0].showAsync();
+
+                pool.recycle(tooltips[0]);
+                // Handed out again, and not set up yet.
+                tooltips[1] = pool.obtain();
+            }
+        });
+
+        // Let the text be measured, and any remaining step run.
+        Thread.sleep(500);
+        getInstrumentation().waitForIdleSync();
+
+        assertSame(tooltips[0], tooltips[1]);
+        assertTrue(pendingShows[0].isCancelled());
+        assertFalse(pendingShows[0].isDone());
+        assertNull(tooltips[1].getParent());
+    }
+}
@@ -9,6 +9,7 @@ import android.widget.LinearLayout;
 import com.actionbarsherlock.app.SherlockActivity;
 import com.actionbarsherlock.view.Menu;
 import com.actionbarsherlock.view.MenuItem;
+import com.heavyplayer.tooltip.sherlock.SherlockMenuItemTarget;
 
 import java.util.Random;
 
@@ -66,7 +67,7 @@ public class ButtonsSherlockActivity extends SherlockActivity {
             tooltip.setColor(Color.RED);
             tooltip.setText(mText);
             tooltip.setTextColor(Color.WHITE);
-            tooltip.setTarget(mMenu, item.getItemId());
+            tooltip.setTarget(new SherlockMenuItemTarget(mMenu, item.getItemId()));
             tooltip.show();
         }
 
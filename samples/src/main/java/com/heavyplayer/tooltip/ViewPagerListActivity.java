@@ -61,11 +61,18 @@ public class ViewPagerListActivity extends FragmentActivity {
 
         @Override
         public void onListItemClick(ListView l, View v, int position, long id) {
-            Tooltip tooltip = new Tooltip(getActivity());
+            final TooltipPool pool = TooltipPool.get(getActivity());
+            Tooltip tooltip = pool.obtain();
             tooltip.setColor(Color.GREEN);
             tooltip.setText("Now try to swipe away");
             tooltip.setTextColor(Color.WHITE);
-            tooltip.setTarget(v);
+            tooltip.setTarget(l, position);
+            tooltip.setOnDismissListener(new Tooltip.OnDismissListener() {
+                @Override
+                public void onDismiss(Tooltip tooltip) {
+                    pool.recycle(tooltip);
+                }
+            });
             tooltip.show();
         }
     }
@@ -0,0 +1,566 @@
+package com.heavyplayer.tooltip.core;
+
+/**
+ * Calculates where a tooltip goes with respect to its target, using integer geometry only.
+ *
+ * Set the inputs, then either call {@link #solve(int)}, which scores every side and alignment at once (or
+ * {@link #solveTracked()} while following a target), or {@link #solveGravity()} followed by {@link #solvePosition()}.
+ * Finally, call {@link #solveLayout(int, int)} and read the results from the getters. A solver is meant to be reused,
+ * and never allocates.
+ */
+public class PlacementSolver {
+    // Same values as android.view.Gravity, so they can be used interchangeably.
+    public static final int TOP = 0x30;
+    public static final int BOTTOM = 0x50;
+    public static final int LEFT = 0x03;
+    public static final int RIGHT = 0x05;
+
+    // Where the arrow sits along the balloon's edge.
+    public static final int ALIGN_START = 0;
+    public static final int ALIGN_CENTER = 1;
+    public static final int ALIGN_END = 2;
+
+    private static final int[] GRAVITIES = {TOP, BOTTOM, LEFT, RIGHT};
+
+    // Clipped pixels weigh much more than an off-center arrow, and more than covering other tooltips.
+    private static final long CLIPPED_AREA_WEIGHT = 16;
+    private static final long OVERLAP_AREA_WEIGHT = 8;
+    // A tracked tooltip looks at the other sides once it covers more than a quarter of its area.
+    private static final int TRACKED_OVERLAP_DIVISOR = 4;
+
+    // Required gravity of the last solve() when it was solveTracked().
+    private static final int TRACKED = -1;
+
+    // Inputs.
+    private int mTargetLeft, mTargetTop, mTargetRight, mTargetBottom;
+    private int mDisplayLeft, mDisplayTop, mDisplayRight, mDisplayBottom;
+    private int mClampLeft, mClampTop, mClampRight, mClampBottom;
+    private int mArrowWidth, mArrowHeight;
+    private int mBalloonWidth, mBalloonHeight;
+    private int mRoundedCornersRadii;
+    private SpatialGrid mObstacles;
+    private int mObstaclesOwner;
+
+    // Outputs.
+    private int mGravity = TOP;
+    private int mAlignment = ALIGN_CENTER;
+    private int mX, mY;
+    private int mWidth, mHeight;
+    private int mArrowOffset;
+    private int mArrowLeft, mArrowTop;
+    private int mBalloonLeft, mBalloonTop;
+
+    // Inputs of the last solve(), to skip it when nothing changed.
+    private boolean mSolved = false;
+    private int mSolvedTargetLeft, mSolvedTargetTop, mSolvedTargetRight, mSolvedTargetBottom;
+    private int mSolvedDisplayLeft, mSolvedDisplayTop, mSolvedDisplayRight, mSolvedDisplayBottom;
+    private int mSolvedArrowBase, mSolvedArrowDepth;
+    private int mSolvedBalloonWidth, mSolvedBalloonHeight;
+    private int mSolvedRoundedCornersRadii;
+    private int mSolvedRequiredGravity;
+    private int mSolvedObstaclesVersion;
+
+    public void setTarget(int left, int top, int right, int bottom) {
+        mTargetLeft = left;
+        mTargetTop = top;
+        mTargetRight = right;
+        mTargetBottom = bottom;
+    }
+
+    public void setDisplaySize(int width, int height) {
+        setDisplayBounds(0, 0, width, height);
+    }
+
+    /**
+     * Set the part of the display the tooltip can go in, in the same coordinates as the target, eg. leaving out the
+     * system bars. Also resets the clamp bounds to them.
+     */
+    public void setDisplayBounds(int left, int top, int right, int bottom) {
+        mDisplayLeft = left;
+        mDisplayTop = top;
+        mDisplayRight = right;
+        mDisplayBottom = bottom;
+        setClampBounds(left, top, right, bottom);
+    }
+
+    /**
+     * Set the bounds the tooltip's container keeps it inside, when they differ from the display bounds, eg. a window
+     * that may go under the system bars. Only used by {@link #solveLayout(int, int)}, to know where the tooltip
+     * actually ends up. Must be set after the display bounds.
+     */
+    public void setClampBounds(int left, int top, int right, int bottom) {
+        mClampLeft = left;
+        mClampTop = top;
+        mClampRight = right;
+        mClampBottom = bottom;
+    }
+
+    public void setArrowSize(int width, int height) {
+        mArrowWidth = width;
+        mArrowHeight = height;
+    }
+
+    public void setBalloonSize(int width, int height) {
+        mBalloonWidth = width;
+        mBalloonHeight = height;
+    }
+
+    public void setRoundedCornersRadii(int roundedCornersRadii) {
+        mRoundedCornersRadii = roundedCornersRadii;
+    }
+
+    /**
+     * Set the other tooltips and targets to avoid when solving, or null to ignore them.
+     *
+     * @param owner the owner of this tooltip's own entries in the grid, which are not avoided
+     */
+    public void setObstacles(SpatialGrid obstacles, int owner) {
+        if(mObstacles != obstacles || mObstaclesOwner != owner) {
+            mObstacles = obstacles;
+            mObstaclesOwner = owner;
+            mSolved = false;
+        }
+    }
+
+    public void setGravity(int gravity) {
+        if(mGravity != gravity) {
+            mGravity = gravity;
+            mSolved = false;
+        }
+    }
+
+    /**
+     * Set the tooltip's position, when it wasn't calculated by {@link #solvePosition()}.
+     */
+    public void setPosition(int x, int y) {
+        mX = x;
+        mY = y;
+    }
+
+    /**
+     * Choose the side of the target with the most space. Needs the target and display size.
+     */
+    public int solveGravity() {
+        // Multiply each space by the opposite action to uniform the scale.
+        int displayWidth = mDisplayRight - mDisplayLeft;
+        int displayHeight = mDisplayBottom - mDisplayTop;
+        int leftSpace = (mTargetLeft - mDisplayLeft) * displayHeight;
+        int topSpace = (mTargetTop - mDisplayTop) * displayWidth;
+        int rightSpace = (mDisplayRight - mTargetRight) * displayHeight;
+        int bottomSpace = (mDisplayBottom - mTargetBottom) * displayWidth;
+
+        int mostSpacious = Math.max(leftSpace, Math.max(topSpace, Math.max(rightSpace, bottomSpace)));
+
+        // Prefer TOP or BOTTOM by allowing them to be up to 30% smaller.
+        if(topSpace == mostSpacious || (bottomSpace != mostSpacious && topSpace > 0.7 * mostSpacious))
+            mGravity = TOP;
+        else if(bottomSpace == mostSpacious || (topSpace != mostSpacious && bottomSpace > 0.7 * mostSpacious))
+            mGravity = BOTTOM;
+        else if(leftSpace == mostSpacious)
+            mGravity = LEFT;
+        else if(rightSpace == mostSpacious)
+            mGravity = RIGHT;
+
+        return mGravity;
+    }
+
+    /**
+     * Choose the best side for the balloon and where the arrow goes along it, and calculate the tooltip's position.
+     * Needs the target, display size, arrow and balloon sizes, and rounded corners radii.
+     *
+     * On each side, the balloon is kept on the display and the arrow slides along its edge to point at the target,
+     * stopping short of the rounded corners. Every side is scored by how much of the tooltip would be clipped by the
+     * display and by how far the arrow is from the balloon's center, in a single pass over the measured sizes. When
+     * obstacles are set, the area covering them counts against a side too. The result is kept until any input changes,
+     * so calling this every frame for a still target is cheap.
+     *
+     * @param requiredGravity the only side to consider, or 0 to consider all of them
+     * @return the chosen gravity
+     */
+    public int solve(int requiredGravity) {
+        if(isSolved(requiredGravity))
+            return mGravity;
+
+        solveSides(requiredGravity);
+        setSolved(requiredGravity);
+        return mGravity;
+    }
+
+    /**
+     * Like {@link #solve(int)} on the current side, for a tooltip following its target, so it doesn't hop between
+     * sides as the target moves. When obstacles are set and the tooltip covers them by more than a quarter of its
+     * area, every side is considered again, and the best one is taken if it covers them at most half as much. The
+     * tooltip doesn't go back until the new side gets as bad, so it doesn't flip back and forth.
+     *
+     * @return the chosen gravity
+     */
+    public int solveTracked() {
+        if(isSolved(TRACKED))
+            return mGravity;
+
+        int gravity = mGravity;
+        solveSides(gravity);
+        if(mObstacles != null) {
+            long overlapArea = getOverlapArea();
+            if(overlapArea * TRACKED_OVERLAP_DIVISOR > (long)mWidth * mHeight) {
+                solveSides(0);
+                if(mGravity != gravity && getOverlapArea() * 2 > overlapArea)
+                    solveSides(gravity);
+            }
+        }
+
+        setSolved(TRACKED);
+        return mGravity;
+    }
+
+    private boolean isSolved(int requiredGravity) {
+        return mSolved
+                && mSolvedTargetLeft == mTargetLeft && mSolvedTargetTop == mTargetTop
+                && mSolvedTargetRight == mTargetRight && mSolvedTargetBottom == mTargetBottom
+                && mSolvedDisplayLeft == mDisplayLeft && mSolvedDisplayTop == mDisplayTop
+                && mSolvedDisplayRight == mDisplayRight && mSolvedDisplayBottom == mDisplayBottom
+                && mSolvedArrowBase == getArrowBase() && mSolvedArrowDepth == getArrowDepth()
+                && mSolvedBalloonWidth == mBalloonWidth && mSolvedBalloonHeight == mBalloonHeight
+                && mSolvedRoundedCornersRadii == mRoundedCornersRadii
+                && mSolvedRequiredGravity == requiredGravity
+                && (mObstacles == null || mSolvedObstaclesVersion == mObstacles.getVersion());
+    }
+
+    private void setSolved(int requiredGravity) {
+        mSolved = true;
+        mSolvedTargetLeft = mTargetLeft;
+        mSolvedTargetTop = mTargetTop;
+        mSolvedTargetRight = mTargetRight;
+        mSolvedTargetBottom = mTargetBottom;
+        mSolvedDisplayLeft = mDisplayLeft;
+        mSolvedDisplayTop = mDisplayTop;
+        mSolvedDisplayRight = mDisplayRight;
+        mSolvedDisplayBottom = mDisplayBottom;
+        mSolvedArrowBase = getArrowBase();
+        mSolvedArrowDepth = getArrowDepth();
+        mSolvedBalloonWidth = mBalloonWidth;
+        mSolvedBalloonHeight = mBalloonHeight;
+        mSolvedRoundedCornersRadii = mRoundedCornersRadii;
+        mSolvedRequiredGravity = requiredGravity;
+        if(mObstacles != null)
+            mSolvedObstaclesVersion = mObstacles.getVersion();
+    }
+
+    /**
+     * Score the candidate of each side, keeping the best one in the outputs.
+     */
+    private void solveSides(int requiredGravity) {
+        int arrowBase = getArrowBase();
+        int arrowDepth = getArrowDepth();
+
+        int targetLeft = trim(mTargetLeft, mDisplayLeft, mDisplayRight);
+        int targetTop = trim(mTargetTop, mDisplayTop, mDisplayBottom);
+        int targetRight = trim(mTargetRight, mDisplayLeft, mDisplayRight);
+        int targetBottom = trim(mTargetBottom, mDisplayTop, mDisplayBottom);
+        int targetCenterX = (targetRight + targetLeft) >> 1;
+        int targetCenterY = (targetBottom + targetTop) >> 1;
+        int targetWidth = targetRight - targetLeft;
+        int targetHeight = targetBottom - targetTop;
+
+        long bestScore = Long.MAX_VALUE;
+        for(int i = 0; i < GRAVITIES.length; i++) {
+            int gravity = GRAVITIES[i];
+            if(requiredGravity != 0 && gravity != requiredGravity)
+                continue;
+
+            boolean vertical = gravity == TOP || gravity == BOTTOM;
+            int width = vertical ? mBalloonWidth : mBalloonWidth + arrowDepth;
+            int height = vertical ? mBalloonHeight + arrowDepth : mBalloonHeight;
+            // The balloon's extent along the edge where the arrow is, and where the arrow should point to.
+            int edgeLength = vertical ? mBalloonWidth : mBalloonHeight;
+            int anchor = vertical ? targetCenterX : targetCenterY;
+
+            // The position across the edge only depends on the side.
+            int across;
+            switch(gravity) {
+                case TOP:
+                    across = mTargetTop - mBalloonHeight - Math.min(arrowDepth / 2, targetHeight / 2);
+                    break;
+
+                case BOTTOM:
+                    across = mTargetBottom - Math.min(arrowDepth / 2, targetHeight / 2);
+                    break;
+
+                case LEFT:
+                    across = mTargetLeft - mBalloonWidth - Math.min(arrowDepth / 2, targetWidth / 2);
+                    break;
+
+                default:
+                    across = mTargetRight - Math.min(arrowDepth / 2, targetWidth / 2);
+                    break;
+            }
+
+            // Keep the balloon on the display, then slide the arrow along its edge to point at the target. Both are
+            // clamps, so the position follows the target continuously instead of jumping between alignments.
+            int displayStart = vertical ? mDisplayLeft : mDisplayTop;
+            int displayEnd = vertical ? mDisplayRight : mDisplayBottom;
+            int along = trim(anchor - edgeLength / 2, displayStart, displayEnd - edgeLength);
+            int arrowOffset = trimArrowOffset(anchor - arrowBase / 2 - along, edgeLength, arrowBase);
+            along = anchor - arrowBase / 2 - arrowOffset;
+
+            int x = vertical ? along : across;
+            int y = vertical ? across : along;
+
+            long clippedArea = (long)width * height - visibleArea(x, y, width, height);
+            long score = clippedArea * CLIPPED_AREA_WEIGHT
+                    + Math.abs(arrowOffset + arrowBase / 2 - edgeLength / 2)
+                    + getSidePenalty(gravity);
+            if(mObstacles != null && score < bestScore) {
+                long overlapArea = mObstacles.getOverlapArea(x, y, x + width, y + height, mObstaclesOwner);
+                score += overlapArea * OVERLAP_AREA_WEIGHT;
+            }
+
+            if(score < bestScore) {
+                bestScore = score;
+                mGravity = gravity;
+                mAlignment = getAlignment(arrowOffset, edgeLength, arrowBase);
+                mX = x;
+                mY = y;
+                mWidth = width;
+                mHeight = height;
+                mArrowOffset = arrowOffset;
+            }
+        }
+    }
+
+    private long getOverlapArea() {
+        return mObstacles.getOverlapArea(mX, mY, mX + mWidth, mY + mHeight, mObstaclesOwner);
+    }
+
+    // The arrow is measured for some gravity, but its base and depth don't depend on it.
+    private int getArrowBase() {
+        return Math.max(mArrowWidth, mArrowHeight);
+    }
+
+    private int getArrowDepth() {
+        return Math.min(mArrowWidth, mArrowHeight);
+    }
+
+    /**
+     * Calculate the tooltip's position for the current gravity. Needs the target, display size, and arrow and
+     * balloon sizes.
+     */
+    public void solvePosition() {
+        int targetLeft = trim(mTargetLeft, mDisplayLeft, mDisplayRight);
+        int targetTop = trim(mTargetTop, mDisplayTop, mDisplayBottom);
+        int targetRight = trim(mTargetRight, mDisplayLeft, mDisplayRight);
+        int targetBottom = trim(mTargetBottom, mDisplayTop, mDisplayBottom);
+        int targetCenterX = (targetRight + targetLeft) >> 1;
+        int targetCenterY = (targetBottom + targetTop) >> 1;
+        int targetWidth = targetRight - targetLeft;
+        int targetHeight = targetBottom - targetTop;
+
+        // Set common properties.
+        switch(mGravity) {
+            case TOP:
+            case BOTTOM:
+                mX = targetCenterX - mBalloonWidth / 2;
+                break;
+
+            case LEFT:
+            case RIGHT:
+                mY = targetCenterY - mBalloonHeight / 2;
+                break;
+        }
+
+        // Set individual properties.
+        switch(mGravity) {
+            case TOP:
+                mY = mTargetTop - mBalloonHeight - Math.min(mArrowHeight / 2, targetHeight / 2);
+                break;
+
+            case BOTTOM:
+                mY = mTargetBottom - Math.min(mArrowHeight / 2, targetHeight / 2);
+                break;
+
+            case LEFT:
+                mX = mTargetLeft - mBalloonWidth - Math.min(mArrowWidth / 2, targetWidth / 2);
+                break;
+
+            case RIGHT:
+                mX = mTargetRight - Math.min(mArrowWidth / 2, targetWidth / 2);
+                break;
+        }
+
+        // Center the arrow.
+        mAlignment = ALIGN_CENTER;
+        switch(mGravity) {
+            case TOP:
+            case BOTTOM:
+                mArrowOffset = mBalloonWidth / 2 - mArrowWidth / 2;
+                break;
+
+            case LEFT:
+            case RIGHT:
+                mArrowOffset = mBalloonHeight / 2 - mArrowHeight / 2;
+                break;
+        }
+        mSolved = false;
+    }
+
+    /**
+     * Position the arrow and balloon inside the tooltip, keeping the balloon on screen when possible. Needs the
+     * position, clamp bounds, arrow and balloon sizes, and rounded corners radii.
+     *
+     * @param width the tooltip's width
+     * @param height the tooltip's height
+     */
+    public void solveLayout(int width, int height) {
+        // Make up for the container moving the tooltip inside its clamp bounds.
+        mArrowLeft = trim(0, mX + width - mClampRight, mX - mClampLeft);
+        mArrowTop = trim(0, mY + height - mClampBottom, mY - mClampTop);
+        mBalloonLeft = mArrowLeft;
+        mBalloonTop = mArrowTop;
+
+        // Position arrow and balloon with respect to each other.
+        switch(mGravity) {
+            case TOP:
+                mArrowLeft += mArrowOffset;
+                mArrowTop += mBalloonHeight;
+                break;
+
+            case BOTTOM:
+                mArrowLeft += mArrowOffset;
+                mBalloonTop += mArrowHeight;
+                break;
+
+            case LEFT:
+                mArrowLeft += mBalloonWidth;
+                mArrowTop += mArrowOffset;
+                break;
+
+            case RIGHT:
+                mArrowTop += mArrowOffset;
+                mBalloonLeft += mArrowWidth;
+                break;
+        }
+
+        // Don't let the balloon be out of the screen when there's no need, but never slide it off the arrow.
+        switch(mGravity) {
+            case TOP:
+            case BOTTOM:
+                mBalloonLeft = trimBalloon(mBalloonLeft, mArrowLeft, mBalloonWidth, mArrowWidth);
+                break;
+
+            case LEFT:
+            case RIGHT:
+                mBalloonTop = trimBalloon(mBalloonTop, mArrowTop, mBalloonHeight, mArrowHeight);
+                break;
+        }
+    }
+
+    public int getGravity() {
+        return mGravity;
+    }
+
+    public int getAlignment() {
+        return mAlignment;
+    }
+
+    /**
+     * Get the arrow's offset from the start of the balloon's edge, along that edge.
+     */
+    public int getArrowOffset() {
+        return mArrowOffset;
+    }
+
+    /**
+     * Get the tooltip's width, as solved by {@link #solve(int)}.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Get the tooltip's height, as solved by {@link #solve(int)}.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getX() {
+        return mX;
+    }
+
+    public int getY() {
+        return mY;
+    }
+
+    public int getArrowLeft() {
+        return mArrowLeft;
+    }
+
+    public int getArrowTop() {
+        return mArrowTop;
+    }
+
+    public int getBalloonLeft() {
+        return mBalloonLeft;
+    }
+
+    public int getBalloonTop() {
+        return mBalloonTop;
+    }
+
+    private long visibleArea(int x, int y, int width, int height) {
+        long visibleWidth = Math.max(0, Math.min(x + width, mDisplayRight) - Math.max(x, mDisplayLeft));
+        long visibleHeight = Math.max(0, Math.min(y + height, mDisplayBottom) - Math.max(y, mDisplayTop));
+        return visibleWidth * visibleHeight;
+    }
+
+    private int getSidePenalty(int gravity) {
+        // Prefer TOP, then BOTTOM, then the sides, when candidates are otherwise equivalent.
+        switch(gravity) {
+            case TOP:
+                return 0;
+
+            case BOTTOM:
+                return 1;
+
+            default:
+                return (mBalloonWidth + mBalloonHeight) / 2;
+        }
+    }
+
+    /**
+     * Keep the arrow on the balloon's edge, clear of the rounded corners when there's room for it.
+     */
+    private int trimArrowOffset(int arrowOffset, int edgeLength, int arrowBase) {
+        int min = mRoundedCornersRadii;
+        int max = edgeLength - arrowBase - mRoundedCornersRadii;
+        if(min > max)
+            min = max = (edgeLength - arrowBase) / 2;
+        return trim(arrowOffset, min, max);
+    }
+
+    private int getAlignment(int arrowOffset, int edgeLength, int arrowBase) {
+        int center = (edgeLength - arrowBase) / 2;
+        if(arrowOffset < center && arrowOffset == trimArrowOffset(Integer.MIN_VALUE, edgeLength, arrowBase))
+            return ALIGN_START;
+        else if(arrowOffset > center && arrowOffset == trimArrowOffset(Integer.MAX_VALUE, edgeLength, arrowBase))
+            return ALIGN_END;
+        else
+            return ALIGN_CENTER;
+    }
+
+    /**
+     * Move the balloon towards the window's origin, which is inside the clamp bounds, as far as the arrow stays on the
+     * balloon's edge.
+     */
+    private int trimBalloon(int balloonStart, int arrowStart, int balloonLength, int arrowBase) {
+        int min = arrowStart + arrowBase + mRoundedCornersRadii - balloonLength;
+        int max = arrowStart - mRoundedCornersRadii;
+        if(min > max)
+            return balloonStart;
+        return trim(0, min, max);
+    }
+
+    private static int trim(int val, int min, int max) {
+        return Math.max(min, Math.min(max, val));
+    }
+}
@@ -0,0 +1,158 @@
+package com.heavyplayer.tooltip.core;
+
+/**
+ * Extrapolates where a moving target will be one frame ahead, from the positions it had in the last few frames.
+ *
+ * Add a sample whenever the target is located, then read the predicted position. When the target stops, or when too
+ * much time passed since the last sample, the prediction is the last position itself. Each prediction is compared with
+ * the next sample, and the error statistics can be read to tune the lookahead. A predictor never allocates.
+ */
+public class PositionPredictor {
+    private static final int HISTORY_SIZE = 4;
+
+    // Samples further apart than this aren't part of the same motion.
+    private static final long DEFAULT_MAX_SAMPLE_GAP_NANOS = 100000000L;
+    private static final long DEFAULT_LOOKAHEAD_NANOS = 16666667L;
+
+    private long mLookaheadNanos = DEFAULT_LOOKAHEAD_NANOS;
+    private long mMaxSampleGapNanos = DEFAULT_MAX_SAMPLE_GAP_NANOS;
+
+    // Ring buffer of the last samples.
+    private final long[] mTimes = new long[HISTORY_SIZE];
+    private final int[] mXs = new int[HISTORY_SIZE];
+    private final int[] mYs = new int[HISTORY_SIZE];
+    private int mNewest = -1;
+    private int mCount = 0;
+
+    private int mPredictedX, mPredictedY;
+    private boolean mPredicting = false;
+
+    // Error statistics, in pixels.
+    private long mErrorCount = 0;
+    private double mErrorSum = 0;
+    private double mMaxError = 0;
+
+    /**
+     * Set how far ahead positions are predicted, usually one frame.
+     */
+    public void setLookahead(long lookaheadNanos) {
+        mLookaheadNanos = lookaheadNanos;
+    }
+
+    public void setMaxSampleGap(long maxSampleGapNanos) {
+        mMaxSampleGapNanos = maxSampleGapNanos;
+    }
+
+    /**
+     * Add the target's position at the given time, and predict its next one.
+     */
+    public void addSample(long timeNanos, int x, int y) {
+        if(mPredicting) {
+            // The last prediction was meant for about now.
+            double error = Math.hypot(x - mPredictedX, y - mPredictedY);
+            mErrorCount++;
+            mErrorSum += error;
+            mMaxError = Math.max(mMaxError, error);
+        }
+
+        if(mCount > 0 && (timeNanos - mTimes[mNewest] > mMaxSampleGapNanos || timeNanos <= mTimes[mNewest]))
+            mCount = 0;
+
+        mNewest = (mNewest + 1) % HISTORY_SIZE;
+        mTimes[mNewest] = timeNanos;
+        mXs[mNewest] = x;
+        mYs[mNewest] = y;
+        mCount = Math.min(mCount + 1, HISTORY_SIZE);
+
+        predict();
+    }
+
+    private void predict() {
+        mPredictedX = mXs[mNewest];
+        mPredictedY = mYs[mNewest];
+        mPredicting = false;
+
+        if(mCount < 2)
+            return;
+
+        int previous = (mNewest + HISTORY_SIZE - 1) % HISTORY_SIZE;
+        int lastDx = mXs[mNewest] - mXs[previous];
+        int lastDy = mYs[mNewest] - mYs[previous];
+        if(lastDx == 0 && lastDy == 0) {
+            // Stopped, so stick to the exact position and start over.
+            mCount = 1;
+            return;
+        }
+
+        // Average the velocity over the history, unless the direction changed within it.
+        int oldest = (mNewest + HISTORY_SIZE - mCount + 1) % HISTORY_SIZE;
+        int dx = mXs[mNewest] - mXs[oldest];
+        int dy = mYs[mNewest] - mYs[oldest];
+        long dt = mTimes[mNewest] - mTimes[oldest];
+        if(sign(dx) != sign(lastDx) || sign(dy) != sign(lastDy)) {
+            dx = lastDx;
+            dy = lastDy;
+            dt = mTimes[mNewest] - mTimes[previous];
+        }
+
+        double scale = (double)mLookaheadNanos / dt;
+        mPredictedX = mXs[mNewest] + (int)Math.round(dx * scale);
+        mPredictedY = mYs[mNewest] + (int)Math.round(dy * scale);
+        mPredicting = true;
+    }
+
+    private static int sign(int value) {
+        return value > 0 ? 1 : (value < 0 ? -1 : 0);
+    }
+
+    /**
+     * Forget the motion, eg. when the target changes.
+     */
+    public void reset() {
+        mCount = 0;
+        mNewest = -1;
+        mPredicting = false;
+    }
+
+    public int getPredictedX() {
+        return mPredictedX;
+    }
+
+    public int getPredictedY() {
+        return mPredictedY;
+    }
+
+    /**
+     * Whether the last prediction extrapolated the motion, rather than just repeating the last position.
+     */
+    public boolean isPredicting() {
+        return mPredicting;
+    }
+
+    /**
+     * Get how many predictions were compared with the actual position.
+     */
+    public long getErrorCount() {
+        return mErrorCount;
+    }
+
+    /**
+     * Get the mean distance between the predicted and actual positions, in pixels.
+     */
+    public double getMeanError() {
+        return mErrorCount > 0 ? mErrorSum / mErrorCount : 0;
+    }
+
+    /**
+     * Get the largest distance between a predicted and actual position, in pixels.
+     */
+    public double getMaxError() {
+        return mMaxError;
+    }
+
+    public void resetErrorStats() {
+        mErrorCount = 0;
+        mErrorSum = 0;
+        mMaxError = 0;
+    }
+}
@@ -0,0 +1,253 @@
+package com.heavyplayer.tooltip.core;
+
+/**
+ * A uniform grid of rectangles, to quickly find how much a rectangle overlaps the others.
+ *
+ * Each entry belongs to an owner, and queries can exclude an owner's own entries. Updates are incremental: an entry is
+ * only moved between cells when the range of cells it covers changes, so moving N entries costs O(N). Queries only
+ * visit the cells the query rectangle covers. Entries outside the grid's bounds are kept but never reported.
+ */
+public class SpatialGrid {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int mCellSize;
+    private int mColumns, mRows;
+    private int[][] mCells;
+    private int[] mCellCounts;
+
+    // Entries, indexed by id.
+    private int mCapacity = 0;
+    private boolean[] mInUse = new boolean[0];
+    private int[] mOwners = new int[0];
+    private int[] mLefts = new int[0], mTops = new int[0], mRights = new int[0], mBottoms = new int[0];
+    // The range of cells each entry is in, empty when first > last.
+    private int[] mFirstColumns = new int[0], mFirstRows = new int[0], mLastColumns = new int[0], mLastRows = new int[0];
+
+    // Marks entries already visited by the current query, as they can be in several cells.
+    private int[] mVisited = new int[0];
+    private int mQuery = 0;
+
+    private int mVersion = 0;
+
+    public SpatialGrid(int cellSize) {
+        if(cellSize <= 0)
+            throw new IllegalArgumentException("The cell size must be positive.");
+
+        mCellSize = cellSize;
+        setBounds(0, 0);
+    }
+
+    /**
+     * Set the size of the area covered by the grid, eg. the display size. All entries are kept.
+     */
+    public void setBounds(int width, int height) {
+        int columns = Math.max(1, (width + mCellSize - 1) / mCellSize);
+        int rows = Math.max(1, (height + mCellSize - 1) / mCellSize);
+        if(mCells != null && columns == mColumns && rows == mRows)
+            return;
+
+        mColumns = columns;
+        mRows = rows;
+        mCells = new int[columns * rows][];
+        mCellCounts = new int[columns * rows];
+
+        for(int id = 0; id < mCapacity; id++) {
+            mFirstColumns[id] = mFirstRows[id] = 0;
+            mLastColumns[id] = mLastRows[id] = -1;
+            if(mInUse[id])
+                rebucket(id);
+        }
+        mVersion++;
+    }
+
+    /**
+     * Add an empty entry.
+     *
+     * @return the entry's id
+     */
+    public int add(int owner) {
+        int id = 0;
+        while(id < mCapacity && mInUse[id])
+            id++;
+        if(id == mCapacity)
+            grow();
+
+        mInUse[id] = true;
+        mOwners[id] = owner;
+        mLefts[id] = mTops[id] = mRights[id] = mBottoms[id] = 0;
+        mFirstColumns[id] = mFirstRows[id] = 0;
+        mLastColumns[id] = mLastRows[id] = -1;
+        return id;
+    }
+
+    /**
+     * Set an entry's bounds. Empty bounds never overlap anything.
+     */
+    public void update(int id, int left, int top, int right, int bottom) {
+        if(mLefts[id] == left && mTops[id] == top && mRights[id] == right && mBottoms[id] == bottom)
+            return;
+
+        mLefts[id] = left;
+        mTops[id] = top;
+        mRights[id] = right;
+        mBottoms[id] = bottom;
+        mVersion++;
+
+        rebucket(id);
+    }
+
+    private void rebucket(int id) {
+        int left = mLefts[id];
+        int top = mTops[id];
+        int right = mRights[id];
+        int bottom = mBottoms[id];
+
+        int firstColumn, firstRow, lastColumn, lastRow;
+        if(left < right && top < bottom) {
+            firstColumn = Math.max(0, left / mCellSize);
+            firstRow = Math.max(0, top / mCellSize);
+            lastColumn = Math.min(mColumns - 1, (right - 1) / mCellSize);
+            lastRow = Math.min(mRows - 1, (bottom - 1) / mCellSize);
+            if(right <= 0 || bottom <= 0) {
+                // Entirely before the grid.
+                lastColumn = -1;
+                lastRow = -1;
+            }
+        }
+        else {
+            firstColumn = firstRow = 0;
+            lastColumn = lastRow = -1;
+        }
+
+        if(firstColumn == mFirstColumns[id] && firstRow == mFirstRows[id]
+                && lastColumn == mLastColumns[id] && lastRow == mLastRows[id])
+            return;
+
+        removeFromCells(id);
+        mFirstColumns[id] = firstColumn;
+        mFirstRows[id] = firstRow;
+        mLastColumns[id] = lastColumn;
+        mLastRows[id] = lastRow;
+        addToCells(id);
+    }
+
+    public void remove(int id) {
+        if(!mInUse[id])
+            return;
+
+        removeFromCells(id);
+        mInUse[id] = false;
+        mVersion++;
+    }
+
+    /**
+     * Get the total area by which the rectangle overlaps the entries of all other owners.
+     */
+    public long getOverlapArea(int left, int top, int right, int bottom, int excludedOwner) {
+        if(left >= right || top >= bottom || right <= 0 || bottom <= 0)
+            return 0;
+
+        int firstColumn = Math.max(0, left / mCellSize);
+        int firstRow = Math.max(0, top / mCellSize);
+        int lastColumn = Math.min(mColumns - 1, (right - 1) / mCellSize);
+        int lastRow = Math.min(mRows - 1, (bottom - 1) / mCellSize);
+
+        mQuery++;
+        long area = 0;
+        for(int row = firstRow; row <= lastRow; row++) {
+            for(int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * mColumns + column;
+                int[] ids = mCells[cell];
+                for(int i = 0, count = mCellCounts[cell]; i < count; i++) {
+                    int id = ids[i];
+                    if(mVisited[id] == mQuery || mOwners[id] == excludedOwner)
+                        continue;
+                    mVisited[id] = mQuery;
+
+                    long overlapWidth = Math.min(right, mRights[id]) - Math.max(left, mLefts[id]);
+                    long overlapHeight = Math.min(bottom, mBottoms[id]) - Math.max(top, mTops[id]);
+                    if(overlapWidth > 0 && overlapHeight > 0)
+                        area += overlapWidth * overlapHeight;
+                }
+            }
+        }
+        return area;
+    }
+
+    /**
+     * Get a number that changes whenever any entry changes, to know when cached results are stale.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    private void addToCells(int id) {
+        for(int row = mFirstRows[id]; row <= mLastRows[id]; row++) {
+            for(int column = mFirstColumns[id]; column <= mLastColumns[id]; column++) {
+                int cell = row * mColumns + column;
+                int[] ids = mCells[cell];
+                int count = mCellCounts[cell];
+                if(ids == null) {
+                    ids = mCells[cell] = new int[INITIAL_CAPACITY];
+                }
+                else if(count == ids.length) {
+                    int[] newIds = new int[count * 2];
+                    System.arraycopy(ids, 0, newIds, 0, count);
+                    ids = mCells[cell] = newIds;
+                }
+                ids[count] = id;
+                mCellCounts[cell] = count + 1;
+            }
+        }
+    }
+
+    private void removeFromCells(int id) {
+        for(int row = mFirstRows[id]; row <= mLastRows[id]; row++) {
+            for(int column = mFirstColumns[id]; column <= mLastColumns[id]; column++) {
+                int cell = row * mColumns + column;
+                int[] ids = mCells[cell];
+                int count = mCellCounts[cell];
+                for(int i = 0; i < count; i++) {
+                    if(ids[i] == id) {
+                        // Order doesn't matter, so replace it with the last one.
+                        ids[i] = ids[count - 1];
+                        mCellCounts[cell] = count - 1;
+                        break;
+                    }
+                }
+            }
+        }
+        mFirstColumns[id] = mFirstRows[id] = 0;
+        mLastColumns[id] = mLastRows[id] = -1;
+    }
+
+    private void grow() {
+        int capacity = Math.max(INITIAL_CAPACITY, mCapacity * 2);
+
+        mInUse = copyOf(mInUse, capacity);
+        mOwners = copyOf(mOwners, capacity);
+        mLefts = copyOf(mLefts, capacity);
+        mTops = copyOf(mTops, capacity);
+        mRights = copyOf(mRights, capacity);
+        mBottoms = copyOf(mBottoms, capacity);
+        mFirstColumns = copyOf(mFirstColumns, capacity);
+        mFirstRows = copyOf(mFirstRows, capacity);
+        mLastColumns = copyOf(mLastColumns, capacity);
+        mLastRows = copyOf(mLastRows, capacity);
+        mVisited = copyOf(mVisited, capacity);
+
+        mCapacity = capacity;
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static boolean[] copyOf(boolean[] array, int length) {
+        boolean[] copy = new boolean[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+}
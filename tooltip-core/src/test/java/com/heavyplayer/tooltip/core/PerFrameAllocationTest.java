@@ -0,0 +1,109 @@
+package com.heavyplayer.tooltip.core;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the core work a tracked tooltip does on every frame doesn't allocate, by counting the bytes allocated by
+ * the test's thread. Skipped on JVMs that can't count them.
+ */
+public class PerFrameAllocationTest {
+    private static final int FRAMES = 10000;
+    private static final long FRAME_NANOS = 16666667L;
+    // Far less than a single small object per frame.
+    private static final long MAX_ALLOCATED_BYTES = 1024;
+
+    private final PlacementSolver mSolver = new PlacementSolver();
+    private final PositionPredictor mPredictor = new PositionPredictor();
+    private final SpatialGrid mGrid = new SpatialGrid(64);
+    private int mBoundsEntry, mTargetEntry;
+
+    private final int[] mTargetLefts = new int[FRAMES];
+    private final int[] mTargetTops = new int[FRAMES];
+
+    @Test
+    public void tracksTargetsWithoutAllocating() {
+        com.sun.management.ThreadMXBean threads = getThreadMXBean();
+        assumeTrue(threads != null);
+
+        setUp();
+
+        // Let the grid's cells and the JIT settle first.
+        for(int i = 0; i < 5; i++)
+            runFrames();
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+        before = threads.getThreadAllocatedBytes(threadId);
+        runFrames();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertTrue(allocated + " bytes allocated over " + FRAMES + " frames", allocated <= MAX_ALLOCATED_BYTES);
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(!(threads instanceof com.sun.management.ThreadMXBean))
+            return null;
+
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean)threads;
+        if(!sunThreads.isThreadAllocatedMemorySupported())
+            return null;
+        sunThreads.setThreadAllocatedMemoryEnabled(true);
+        return sunThreads;
+    }
+
+    private void setUp() {
+        mSolver.setDisplaySize(1080, 1920);
+        mSolver.setArrowSize(40, 20);
+        mSolver.setBalloonSize(400, 100);
+        mSolver.setRoundedCornersRadii(8);
+
+        // Other tooltips to avoid, and this one's own entries.
+        mGrid.setBounds(1080, 1920);
+        Random random = new Random(42);
+        for(int i = 0; i < 8; i++) {
+            int left = random.nextInt(1080);
+            int top = random.nextInt(1920);
+            mGrid.update(mGrid.add(2 + i), left, top, left + 400, top + 120);
+        }
+        mBoundsEntry = mGrid.add(1);
+        mTargetEntry = mGrid.add(1);
+        mSolver.setObstacles(mGrid, 1);
+
+        // A target scrolled up and down the screen.
+        for(int frame = 0; frame < FRAMES; frame++) {
+            mTargetLefts[frame] = 100 + (frame * 3) % 800;
+            mTargetTops[frame] = 1800 - (frame * 7) % 1700;
+        }
+    }
+
+    private void runFrames() {
+        for(int frame = 0; frame < FRAMES; frame++) {
+            int left = mTargetLefts[frame];
+            int top = mTargetTops[frame];
+
+            mPredictor.addSample(frame * FRAME_NANOS, left, top);
+            left = mPredictor.getPredictedX();
+            top = mPredictor.getPredictedY();
+
+            mSolver.setTarget(left, top, left + 80, top + 80);
+            if(frame % 60 == 0)
+                mSolver.solve(0);
+            else
+                mSolver.solveTracked();
+            mSolver.solveLayout(mSolver.getWidth(), mSolver.getHeight());
+
+            mGrid.update(mBoundsEntry, mSolver.getX(), mSolver.getY(),
+                    mSolver.getX() + mSolver.getWidth(), mSolver.getY() + mSolver.getHeight());
+            mGrid.update(mTargetEntry, left, top, left + 80, top + 80);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.heavyplayer.tooltip.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlacementSolverTest {
+    private static final int ARROW_BASE = 40;
+    private static final int ARROW_DEPTH = 20;
+    private static final int RADII = 8;
+
+    private static final int[] GRAVITIES = {
+            PlacementSolver.TOP, PlacementSolver.BOTTOM, PlacementSolver.LEFT, PlacementSolver.RIGHT};
+
+    // The last random scenario.
+    private int mTargetLeft, mTargetTop, mTargetRight, mTargetBottom;
+    private int mBalloonWidth, mBalloonHeight;
+
+    @Test
+    public void keepsTheArrowOnTheBalloon() {
+        Random random = new Random(42);
+        PlacementSolver solver = new PlacementSolver();
+
+        for(int i = 0; i < 100000; i++) {
+            setRandomScenario(solver, random);
+            int requiredGravity = random.nextBoolean() ? 0 : GRAVITIES[random.nextInt(GRAVITIES.length)];
+
+            solver.solve(requiredGravity);
+            layout(solver);
+
+            assertArrowOnBalloon("scenario " + i, solver, mBalloonWidth, mBalloonHeight);
+        }
+    }
+
+    @Test
+    public void followsTheTargetContinuously() {
+        Random random = new Random(7);
+        PlacementSolver solver = new PlacementSolver();
+
+        for(int i = 0; i < 2000; i++) {
+            setRandomScenario(solver, random);
+            int gravity = GRAVITIES[random.nextInt(GRAVITIES.length)];
+            boolean vertical = gravity == PlacementSolver.TOP || gravity == PlacementSolver.BOTTOM;
+
+            solver.solve(gravity);
+            int previousX = solver.getX();
+            int previousY = solver.getY();
+
+            // Slide the target along the balloon's edge, one pixel at a time, like a slow scroll.
+            for(int step = 0; step < 300; step++) {
+                int dx = vertical ? -1 : 0;
+                int dy = vertical ? 0 : -1;
+                mTargetLeft += dx;
+                mTargetTop += dy;
+                mTargetRight += dx;
+                mTargetBottom += dy;
+                solver.setTarget(mTargetLeft, mTargetTop, mTargetRight, mTargetBottom);
+                solver.solve(gravity);
+
+                String message = "scenario " + i + ", step " + step;
+                if(vertical) {
+                    assertTrue(message, Math.abs(solver.getX() - previousX) <= 1);
+                    assertEquals(message, previousY, solver.getY());
+                }
+                else {
+                    assertEquals(message, previousX, solver.getX());
+                    assertTrue(message, Math.abs(solver.getY() - previousY) <= 1);
+                }
+                previousX = solver.getX();
+                previousY = solver.getY();
+            }
+        }
+    }
+
+    @Test
+    public void doesNotJumpNearTheDisplayEdge() {
+        PlacementSolver solver = new PlacementSolver();
+        solver.setDisplaySize(1080, 1920);
+        solver.setArrowSize(ARROW_BASE, ARROW_DEPTH);
+        solver.setBalloonSize(400, 100);
+        solver.setRoundedCornersRadii(RADII);
+
+        // Scroll a small target towards the left edge, where the arrow has to leave the balloon's center.
+        int previousX = 0;
+        for(int left = 400; left >= -40; left--) {
+            solver.setTarget(left, 500, left + 2, 540);
+            solver.solve(PlacementSolver.TOP);
+            if(left < 400)
+                assertTrue("left " + left, Math.abs(solver.getX() - previousX) <= 1);
+            previousX = solver.getX();
+        }
+    }
+
+    @Test
+    public void keepsTheBalloonInsideTheDisplayBounds() {
+        PlacementSolver solver = new PlacementSolver();
+        solver.setDisplayBounds(0, 60, 1080, 1920);
+        solver.setArrowSize(ARROW_BASE, ARROW_DEPTH);
+        solver.setBalloonSize(400, 100);
+        solver.setRoundedCornersRadii(RADII);
+
+        // Right below the status bar, there's no room above the target.
+        solver.setTarget(500, 70, 580, 150);
+        assertEquals(PlacementSolver.BOTTOM, solver.solve(0));
+        assertTrue(solver.getY() >= 60);
+    }
+
+    @Test
+    public void laysOutWhereTheContainerClampsTheWindow() {
+        PlacementSolver solver = new PlacementSolver();
+        // A full screen window, which may go under the status bar.
+        solver.setDisplayBounds(0, 75, 1080, 1920);
+        solver.setClampBounds(0, 0, 1080, 1920);
+        solver.setArrowSize(ARROW_BASE, ARROW_DEPTH);
+        solver.setBalloonSize(400, 100);
+        solver.setRoundedCornersRadii(RADII);
+
+        // A tracked target scrolled up to the status bar.
+        solver.setTarget(500, 150, 580, 230);
+        solver.solve(PlacementSolver.TOP);
+        solver.solveLayout(solver.getWidth(), solver.getHeight());
+
+        // The window isn't moved, so neither are the balloon and arrow inside it.
+        assertEquals(40, solver.getY());
+        assertEquals(0, solver.getBalloonTop());
+        assertEquals(100, solver.getArrowTop());
+        assertArrowOnBalloon("clamped", solver, 400, 100);
+    }
+
+    @Test
+    public void movesTrackedTooltipsOffOtherTooltips() {
+        PlacementSolver solver = new PlacementSolver();
+        solver.setDisplaySize(1080, 1920);
+        solver.setArrowSize(ARROW_BASE, ARROW_DEPTH);
+        solver.setBalloonSize(400, 100);
+        solver.setRoundedCornersRadii(RADII);
+
+        SpatialGrid grid = new SpatialGrid(64);
+        grid.setBounds(1080, 1920);
+        solver.setObstacles(grid, 1);
+        // Another tooltip, above which this one's target scrolls.
+        grid.update(grid.add(2), 0, 600, 1080, 700);
+
+        solver.setTarget(500, 1000, 580, 1080);
+        assertEquals(PlacementSolver.TOP, solver.solve(0));
+
+        int switchedAt = -1;
+        for(int top = 1000; top >= 720; top--) {
+            solver.setTarget(500, top, 580, top + 80);
+            int gravity = solver.solveTracked();
+
+            long area = (long)solver.getWidth() * solver.getHeight();
+            long overlapArea = grid.getOverlapArea(solver.getX(), solver.getY(),
+                    solver.getX() + solver.getWidth(), solver.getY() + solver.getHeight(), 1);
+            if(gravity == PlacementSolver.TOP) {
+                // A little overlap doesn't make it hop to another side.
+                assertEquals("top " + top, -1, switchedAt);
+                assertTrue("top " + top, overlapArea * 4 <= area);
+            }
+            else {
+                // Once it left, it stays off the other tooltip, and doesn't come back.
+                if(switchedAt == -1)
+                    switchedAt = top;
+                assertEquals("top " + top, PlacementSolver.BOTTOM, gravity);
+                assertEquals("top " + top, 0, overlapArea);
+            }
+        }
+        assertTrue(switchedAt != -1);
+    }
+
+    private void setRandomScenario(PlacementSolver solver, Random random) {
+        int displayWidth = 240 + random.nextInt(2320);
+        int displayHeight = 320 + random.nextInt(2240);
+
+        // Let targets go partially off screen, as they do while scrolling.
+        int targetWidth = 1 + random.nextInt(displayWidth / 2);
+        int targetHeight = 1 + random.nextInt(displayHeight / 2);
+        mTargetLeft = random.nextInt(displayWidth + targetWidth) - targetWidth;
+        mTargetTop = random.nextInt(displayHeight + targetHeight) - targetHeight;
+        mTargetRight = mTargetLeft + targetWidth;
+        mTargetBottom = mTargetTop + targetHeight;
+
+        // Always room for the arrow between the rounded corners, like the measured balloons.
+        int minLength = ARROW_BASE + 2 * RADII;
+        mBalloonWidth = minLength + random.nextInt(displayWidth - minLength);
+        mBalloonHeight = minLength + random.nextInt(displayHeight / 2);
+
+        solver.setDisplaySize(displayWidth, displayHeight);
+        solver.setTarget(mTargetLeft, mTargetTop, mTargetRight, mTargetBottom);
+        solver.setArrowSize(ARROW_BASE, ARROW_DEPTH);
+        solver.setBalloonSize(mBalloonWidth, mBalloonHeight);
+        solver.setRoundedCornersRadii(RADII);
+    }
+
+    private static void layout(PlacementSolver solver) {
+        // The arrow is measured again for the chosen side.
+        if(isVertical(solver.getGravity()))
+            solver.setArrowSize(ARROW_BASE, ARROW_DEPTH);
+        else
+            solver.setArrowSize(ARROW_DEPTH, ARROW_BASE);
+        solver.solveLayout(solver.getWidth(), solver.getHeight());
+    }
+
+    private static void assertArrowOnBalloon(String message, PlacementSolver solver, int balloonWidth,
+                                             int balloonHeight) {
+        switch(solver.getGravity()) {
+            case PlacementSolver.TOP:
+                assertEquals(message, solver.getBalloonTop() + balloonHeight, solver.getArrowTop());
+                break;
+
+            case PlacementSolver.BOTTOM:
+                assertEquals(message, solver.getArrowTop() + ARROW_DEPTH, solver.getBalloonTop());
+                break;
+
+            case PlacementSolver.LEFT:
+                assertEquals(message, solver.getBalloonLeft() + balloonWidth, solver.getArrowLeft());
+                break;
+
+            case PlacementSolver.RIGHT:
+                assertEquals(message, solver.getArrowLeft() + ARROW_DEPTH, solver.getBalloonLeft());
+                break;
+        }
+
+        if(isVertical(solver.getGravity())) {
+            assertTrue(message, solver.getArrowLeft() >= solver.getBalloonLeft() + RADII);
+            assertTrue(message, solver.getArrowLeft() + ARROW_BASE <= solver.getBalloonLeft() + balloonWidth - RADII);
+        }
+        else {
+            assertTrue(message, solver.getArrowTop() >= solver.getBalloonTop() + RADII);
+            assertTrue(message, solver.getArrowTop() + ARROW_BASE <= solver.getBalloonTop() + balloonHeight - RADII);
+        }
+    }
+
+    private static boolean isVertical(int gravity) {
+        return gravity == PlacementSolver.TOP || gravity == PlacementSolver.BOTTOM;
+    }
+}
@@ -0,0 +1,114 @@
+package com.heavyplayer.tooltip.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PositionPredictorTest {
+    private static final long FRAME_NANOS = 16666667L;
+
+    @Test
+    public void repeatsTheFirstSample() {
+        PositionPredictor predictor = new PositionPredictor();
+        predictor.addSample(0, 10, 20);
+
+        assertFalse(predictor.isPredicting());
+        assertEquals(10, predictor.getPredictedX());
+        assertEquals(20, predictor.getPredictedY());
+    }
+
+    @Test
+    public void extrapolatesSteadyMotion() {
+        PositionPredictor predictor = new PositionPredictor();
+        for(int frame = 0; frame < 4; frame++)
+            predictor.addSample(frame * FRAME_NANOS, frame * 10, 100 - frame * 5);
+
+        assertTrue(predictor.isPredicting());
+        assertEquals(40, predictor.getPredictedX());
+        assertEquals(80, predictor.getPredictedY());
+    }
+
+    @Test
+    public void fallsBackToTheLastPositionWhenStopped() {
+        PositionPredictor predictor = new PositionPredictor();
+        predictor.addSample(0, 0, 0);
+        predictor.addSample(FRAME_NANOS, 10, 0);
+        predictor.addSample(2 * FRAME_NANOS, 10, 0);
+
+        assertFalse(predictor.isPredicting());
+        assertEquals(10, predictor.getPredictedX());
+
+        // The motion starts over from the stop.
+        predictor.addSample(3 * FRAME_NANOS, 13, 0);
+        assertTrue(predictor.isPredicting());
+        assertEquals(16, predictor.getPredictedX());
+    }
+
+    @Test
+    public void fallsBackToTheLastPositionAfterAGap() {
+        PositionPredictor predictor = new PositionPredictor();
+        predictor.addSample(0, 0, 0);
+        predictor.addSample(FRAME_NANOS, 10, 0);
+        predictor.addSample(FRAME_NANOS + 200000000L, 20, 0);
+
+        assertFalse(predictor.isPredicting());
+        assertEquals(20, predictor.getPredictedX());
+    }
+
+    @Test
+    public void fallsBackToTheLastPositionWhenTimeGoesBack() {
+        PositionPredictor predictor = new PositionPredictor();
+        predictor.addSample(FRAME_NANOS, 0, 0);
+        predictor.addSample(2 * FRAME_NANOS, 10, 0);
+        predictor.addSample(FRAME_NANOS, 20, 0);
+
+        assertFalse(predictor.isPredicting());
+        assertEquals(20, predictor.getPredictedX());
+    }
+
+    @Test
+    public void usesTheLastMoveWhenTheDirectionChanges() {
+        PositionPredictor predictor = new PositionPredictor();
+        predictor.addSample(0, 0, 0);
+        predictor.addSample(FRAME_NANOS, 10, 0);
+        predictor.addSample(2 * FRAME_NANOS, 20, 0);
+        predictor.addSample(3 * FRAME_NANOS, 18, 0);
+
+        // Averaging over the history would predict 24.
+        assertTrue(predictor.isPredicting());
+        assertEquals(16, predictor.getPredictedX());
+    }
+
+    @Test
+    public void measuresPredictionErrors() {
+        PositionPredictor predictor = new PositionPredictor();
+        predictor.addSample(0, 0, 0);
+        predictor.addSample(FRAME_NANOS, 10, 0);
+        // Predicted 20.
+        predictor.addSample(2 * FRAME_NANOS, 20, 0);
+        // Predicted 30.
+        predictor.addSample(3 * FRAME_NANOS, 26, 0);
+
+        assertEquals(2, predictor.getErrorCount());
+        assertEquals(2, predictor.getMeanError(), 1e-9);
+        assertEquals(4, predictor.getMaxError(), 1e-9);
+
+        predictor.resetErrorStats();
+        assertEquals(0, predictor.getErrorCount());
+        assertEquals(0, predictor.getMaxError(), 1e-9);
+    }
+
+    @Test
+    public void forgetsTheMotionOnReset() {
+        PositionPredictor predictor = new PositionPredictor();
+        predictor.addSample(0, 0, 0);
+        predictor.addSample(FRAME_NANOS, 10, 0);
+
+        predictor.reset();
+        predictor.addSample(2 * FRAME_NANOS, 100, 0);
+        assertFalse(predictor.isPredicting());
+        assertEquals(100, predictor.getPredictedX());
+    }
+}
@@ -0,0 +1,134 @@
+package com.heavyplayer.tooltip.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpatialGridTest {
+    private static final int CELL_SIZE = 64;
+
+    @Test
+    public void measuresOverlapWithOtherOwners() {
+        SpatialGrid grid = new SpatialGrid(CELL_SIZE);
+        grid.setBounds(1080, 1920);
+        int id = grid.add(1);
+        grid.update(id, 0, 0, 100, 100);
+
+        assertEquals(2500, grid.getOverlapArea(50, 50, 150, 150, 2));
+        assertEquals(0, grid.getOverlapArea(50, 50, 150, 150, 1));
+        assertEquals(0, grid.getOverlapArea(100, 0, 200, 100, 2));
+    }
+
+    @Test
+    public void countsEntriesSpanningSeveralCellsOnce() {
+        SpatialGrid grid = new SpatialGrid(10);
+        grid.setBounds(1080, 1920);
+        grid.update(grid.add(1), 0, 0, 100, 100);
+
+        assertEquals(10000, grid.getOverlapArea(0, 0, 100, 100, 2));
+        assertEquals(10000, grid.getOverlapArea(-50, -50, 500, 500, 2));
+    }
+
+    @Test
+    public void followsUpdatedAndRemovedEntries() {
+        SpatialGrid grid = new SpatialGrid(CELL_SIZE);
+        grid.setBounds(1080, 1920);
+        int id = grid.add(1);
+        grid.update(id, 0, 0, 100, 100);
+
+        grid.update(id, 500, 500, 600, 600);
+        assertEquals(0, grid.getOverlapArea(0, 0, 100, 100, 2));
+        assertEquals(10000, grid.getOverlapArea(500, 500, 600, 600, 2));
+
+        // Empty bounds never overlap anything.
+        grid.update(id, 500, 500, 500, 600);
+        assertEquals(0, grid.getOverlapArea(0, 0, 1080, 1920, 2));
+
+        grid.update(id, 500, 500, 600, 600);
+        grid.remove(id);
+        assertEquals(0, grid.getOverlapArea(0, 0, 1080, 1920, 2));
+    }
+
+    @Test
+    public void rebucketsEntriesWhenTheBoundsChange() {
+        SpatialGrid grid = new SpatialGrid(CELL_SIZE);
+        int id = grid.add(1);
+        // Outside the grid until it grows.
+        grid.update(id, 500, 500, 600, 600);
+        assertEquals(0, grid.getOverlapArea(500, 500, 600, 600, 2));
+
+        grid.setBounds(1080, 1920);
+        assertEquals(10000, grid.getOverlapArea(500, 500, 600, 600, 2));
+
+        // Shrinking keeps the entry, and growing again brings it back.
+        grid.setBounds(320, 320);
+        assertEquals(0, grid.getOverlapArea(500, 500, 600, 600, 2));
+        grid.setBounds(1080, 1920);
+        assertEquals(10000, grid.getOverlapArea(500, 500, 600, 600, 2));
+    }
+
+    @Test
+    public void changesVersionOnlyWhenEntriesChange() {
+        SpatialGrid grid = new SpatialGrid(CELL_SIZE);
+        grid.setBounds(1080, 1920);
+        int id = grid.add(1);
+        grid.update(id, 0, 0, 100, 100);
+
+        int version = grid.getVersion();
+        grid.update(id, 0, 0, 100, 100);
+        assertEquals(version, grid.getVersion());
+
+        grid.update(id, 1, 0, 101, 100);
+        assertTrue(grid.getVersion() != version);
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        Random random = new Random(42);
+        SpatialGrid grid = new SpatialGrid(CELL_SIZE);
+        grid.setBounds(1080, 1920);
+
+        int count = 32;
+        int[][] bounds = new int[count][4];
+        int[] owners = new int[count];
+        int[] ids = new int[count];
+        for(int i = 0; i < count; i++) {
+            owners[i] = 1 + random.nextInt(4);
+            ids[i] = grid.add(owners[i]);
+        }
+
+        for(int round = 0; round < 2000; round++) {
+            int i = random.nextInt(count);
+            int left = random.nextInt(1280) - 100;
+            int top = random.nextInt(2120) - 100;
+            bounds[i][0] = left;
+            bounds[i][1] = top;
+            bounds[i][2] = left + random.nextInt(400);
+            bounds[i][3] = top + random.nextInt(400);
+            grid.update(ids[i], bounds[i][0], bounds[i][1], bounds[i][2], bounds[i][3]);
+
+            // Entries may stick out of the grid, but queries stay inside it.
+            int queryLeft = random.nextInt(1080);
+            int queryTop = random.nextInt(1920);
+            int queryRight = Math.min(1080, queryLeft + 1 + random.nextInt(400));
+            int queryBottom = Math.min(1920, queryTop + 1 + random.nextInt(400));
+            int excludedOwner = 1 + random.nextInt(4);
+
+            long expected = 0;
+            for(int j = 0; j < count; j++) {
+                if(owners[j] == excludedOwner)
+                    continue;
+
+                long width = Math.min(queryRight, bounds[j][2]) - Math.max(queryLeft, bounds[j][0]);
+                long height = Math.min(queryBottom, bounds[j][3]) - Math.max(queryTop, bounds[j][1]);
+                if(width > 0 && height > 0)
+                    expected += width * height;
+            }
+            assertEquals("round " + round, expected,
+                    grid.getOverlapArea(queryLeft, queryTop, queryRight, queryBottom, excludedOwner));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.heavyplayer.tooltip.sherlock;
+
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+import com.actionbarsherlock.view.Menu;
+import com.actionbarsherlock.view.MenuItem;
+import com.heavyplayer.tooltip.MenuItemTarget;
+
+/**
+ * An ActionBarSherlock menu item, to be targeted with {@link com.heavyplayer.tooltip.Tooltip#setTarget(MenuItemTarget)}.
+ *
+ * Only visible Action Bar menu items are supported. When used with collapsed
+ * menu items, or the old bottom menus, the behaviour is undefined.
+ */
+public class SherlockMenuItemTarget implements MenuItemTarget {
+    private final Menu mMenu;
+    private final int mItemId;
+
+    public SherlockMenuItemTarget(Menu menu, int itemId) {
+        mMenu = menu;
+        mItemId = itemId;
+    }
+
+    @Override
+    public int getItemId() {
+        return mItemId;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return mMenu.findItem(mItemId) != null;
+    }
+
+    @Override
+    public Drawable getIcon() {
+        return mMenu.findItem(mItemId).getIcon();
+    }
+
+    @Override
+    public View getActionView() {
+        return mMenu.findItem(mItemId).getActionView();
+    }
+
+    @Override
+    public void setActionView(View view) {
+        MenuItem item = mMenu.findItem(mItemId);
+        item.setActionView(view);
+    }
+}
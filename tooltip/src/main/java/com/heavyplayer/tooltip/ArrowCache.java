@@ -0,0 +1,103 @@
+package com.heavyplayer.tooltip;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.SparseArray;
+import android.view.Gravity;
+
+/**
+ * Process-wide cache of the arrows' geometry and paints, shared by all tooltips.
+ *
+ * Paths are built already rotated for each gravity, so drawing an arrow is a single draw call. The geometry only
+ * depends on the arrow size and gravity, and the paint only on the color, so they're cached separately and any number
+ * of tooltips share a handful of each. Must only be used from the main thread.
+ */
+final class ArrowCache {
+    private static final SparseArray<Path> sPaths = new SparseArray<Path>();
+    private static final SparseArray<Paint> sPaints = new SparseArray<Paint>();
+
+    private ArrowCache() {
+    }
+
+    /**
+     * Get the arrow's path, in the coordinates of a view measured for the gravity.
+     *
+     * @param sideSize the arrow's side size, which must be even
+     */
+    static Path getPath(int sideSize, int gravity) {
+        int key = (sideSize << 4) | getGravityIndex(gravity);
+        Path path = sPaths.get(key);
+        if(path == null) {
+            path = createPath(sideSize, gravity);
+            sPaths.put(key, path);
+        }
+        return path;
+    }
+
+    static Paint getPaint(int color) {
+        Paint paint = sPaints.get(color);
+        if(paint == null) {
+            paint = new Paint();
+            paint.setStyle(Paint.Style.FILL);
+            paint.setAntiAlias(true);
+            paint.setColor(color);
+            sPaints.put(color, paint);
+        }
+        return paint;
+    }
+
+    private static Path createPath(int sideSize, int gravity) {
+        Path path = new Path();
+        path.setFillType(Path.FillType.EVEN_ODD);
+
+        int otherSideSize = sideSize * 2;
+        switch(gravity) {
+            case Gravity.BOTTOM:
+                // Pointing up.
+                path.moveTo(0, sideSize);
+                path.lineTo(otherSideSize / 2, 0);
+                path.lineTo(otherSideSize, sideSize);
+                break;
+
+            case Gravity.LEFT:
+                // Pointing right.
+                path.moveTo(0, otherSideSize);
+                path.lineTo(sideSize, otherSideSize / 2);
+                path.lineTo(0, 0);
+                break;
+
+            case Gravity.RIGHT:
+                // Pointing left.
+                path.moveTo(sideSize, 0);
+                path.lineTo(0, otherSideSize / 2);
+                path.lineTo(sideSize, otherSideSize);
+                break;
+
+            default:
+                // Pointing down.
+                path.moveTo(0, 0);
+                path.lineTo(otherSideSize / 2, sideSize);
+                path.lineTo(otherSideSize, 0);
+                break;
+        }
+
+        path.close();
+        return path;
+    }
+
+    private static int getGravityIndex(int gravity) {
+        switch(gravity) {
+            case Gravity.BOTTOM:
+                return 1;
+
+            case Gravity.LEFT:
+                return 2;
+
+            case Gravity.RIGHT:
+                return 3;
+
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.heavyplayer.tooltip;
+
+import android.app.Activity;
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * The area of an activity's window where its tooltips can go, shared by all of them.
+ *
+ * The window's position is measured again after it's laid out, but the visible frame, which takes a call to the window
+ * manager, only when the window is resized (eg. rotated, resized in split screen, or shrunk by the keyboard) or its
+ * configuration changes. Bounds are in the window's coordinates, like tooltip positions, so a window offset from the
+ * screen's origin (in the bottom half of a split screen, or a dialog) isn't mistaken for a smaller one, and the system
+ * bars over a full screen window are left out on every side.
+ *
+ * The window's whole size and the content view's bounds are kept too, as that's what the window manager or the
+ * overlay host keep tooltips inside.
+ */
+final class DisplayGeometry implements ViewTreeObserver.OnGlobalLayoutListener {
+    private final View mDecorView;
+    private ViewTreeObserver mObserver;
+
+    private final int[] mDecorPosition = new int[2];
+    private final int[] mContentPosition = new int[2];
+    private final Rect mContentBounds = new Rect();
+    private final Rect mVisibleFrame = new Rect();
+    private boolean mDirty = true;
+    private boolean mFrameDirty = true;
+    private int mDecorWidth, mDecorHeight;
+    private int mLeft, mTop, mRight, mBottom;
+
+    static DisplayGeometry get(Activity activity) {
+        // Keep the geometry on the decor view, so it goes away with the activity.
+        View decorView = activity.getWindow().getDecorView();
+        DisplayGeometry geometry = (DisplayGeometry)decorView.getTag(R.id.tooltip_display_geometry);
+        if(geometry == null) {
+            geometry = new DisplayGeometry(decorView);
+            decorView.setTag(R.id.tooltip_display_geometry, geometry);
+        }
+        return geometry;
+    }
+
+    private DisplayGeometry(View decorView) {
+        mDecorView = decorView;
+        observe();
+    }
+
+    private void observe() {
+        mObserver = mDecorView.getViewTreeObserver();
+        mObserver.addOnGlobalLayoutListener(this);
+    }
+
+    /**
+     * Measure the window again on the next call, eg. after a configuration change.
+     */
+    void invalidate() {
+        mDirty = mFrameDirty = true;
+    }
+
+    int getLeft() {
+        update();
+        return mLeft;
+    }
+
+    int getTop() {
+        update();
+        return mTop;
+    }
+
+    int getRight() {
+        update();
+        return mRight;
+    }
+
+    int getBottom() {
+        update();
+        return mBottom;
+    }
+
+    int getWindowWidth() {
+        update();
+        return mDecorWidth;
+    }
+
+    int getWindowHeight() {
+        update();
+        return mDecorHeight;
+    }
+
+    /**
+     * Get the bounds of the activity's content view, in the window's coordinates.
+     */
+    void getContentBounds(Rect outBounds) {
+        update();
+        outBounds.set(mContentBounds);
+    }
+
+    private void update() {
+        // The observer is replaced when the window is attached again.
+        if(!mObserver.isAlive()) {
+            observe();
+            mDirty = mFrameDirty = true;
+        }
+
+        if(!mDirty)
+            return;
+
+        int decorWidth = mDecorView.getWidth();
+        int decorHeight = mDecorView.getHeight();
+        if(decorWidth != mDecorWidth || decorHeight != mDecorHeight) {
+            mDecorWidth = decorWidth;
+            mDecorHeight = decorHeight;
+            mFrameDirty = true;
+        }
+
+        mDecorView.getLocationOnScreen(mDecorPosition);
+        if(mFrameDirty) {
+            mDecorView.getWindowVisibleDisplayFrame(mVisibleFrame);
+            mFrameDirty = false;
+        }
+
+        mLeft = 0;
+        mTop = 0;
+        mRight = decorWidth;
+        mBottom = decorHeight;
+        if(!mVisibleFrame.isEmpty()) {
+            // Leave out what the system bars and keyboard cover, once in the window's coordinates.
+            mLeft = Math.max(mLeft, Math.min(mRight, mVisibleFrame.left - mDecorPosition[0]));
+            mTop = Math.max(mTop, Math.min(mBottom, mVisibleFrame.top - mDecorPosition[1]));
+            mRight = Math.max(mLeft, Math.min(mRight, mVisibleFrame.right - mDecorPosition[0]));
+            mBottom = Math.max(mTop, Math.min(mBottom, mVisibleFrame.bottom - mDecorPosition[1]));
+        }
+
+        // Only moved by a layout, like the decor.
+        View contentView = mDecorView.findViewById(android.R.id.content);
+        if(contentView != null) {
+            contentView.getLocationInWindow(mContentPosition);
+            mContentBounds.set(mContentPosition[0], mContentPosition[1],
+                    mContentPosition[0] + contentView.getWidth(), mContentPosition[1] + contentView.getHeight());
+        }
+        else {
+            mContentBounds.set(0, 0, decorWidth, decorHeight);
+        }
+
+        // Until the window is laid out, there's nothing worth keeping.
+        mDirty = decorWidth == 0 || decorHeight == 0;
+        mFrameDirty = mDirty;
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        // Only a resize changes the visible frame enough to ask the window manager again.
+        mDirty = true;
+    }
+}
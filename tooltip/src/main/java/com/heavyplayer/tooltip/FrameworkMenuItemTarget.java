@@ -0,0 +1,48 @@
+package com.heavyplayer.tooltip;
+
+import android.annotation.TargetApi;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+
+/**
+ * A framework Action Bar menu item.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class FrameworkMenuItemTarget implements MenuItemTarget {
+    private final Menu mMenu;
+    private final int mItemId;
+
+    FrameworkMenuItemTarget(Menu menu, int itemId) {
+        mMenu = menu;
+        mItemId = itemId;
+    }
+
+    @Override
+    public int getItemId() {
+        return mItemId;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return mMenu.findItem(mItemId) != null;
+    }
+
+    @Override
+    public Drawable getIcon() {
+        return mMenu.findItem(mItemId).getIcon();
+    }
+
+    @Override
+    public View getActionView() {
+        return mMenu.findItem(mItemId).getActionView();
+    }
+
+    @Override
+    public void setActionView(View view) {
+        MenuItem item = mMenu.findItem(mItemId);
+        item.setActionView(view);
+    }
+}
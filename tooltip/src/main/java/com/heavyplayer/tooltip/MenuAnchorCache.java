@@ -0,0 +1,151 @@
+package com.heavyplayer.tooltip;
+
+import android.app.Activity;
+import android.content.res.Configuration;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+
+import java.util.ArrayList;
+
+/**
+ * Remembers where the action bar shows each menu item, so menu tooltips only swap a placeholder into the action bar
+ * the first time, and keeps the placeholders for reuse.
+ *
+ * Bounds are kept relative to the view holding the action items, and are dropped when that view is resized or
+ * detached (eg. the items changed) or when the configuration changes.
+ */
+final class MenuAnchorCache {
+    private static final int MAX_PLACEHOLDERS = 2;
+
+    private final Activity mActivity;
+    private final LayoutInflater mLayoutInflater;
+    private final Configuration mConfiguration;
+
+    private final SparseArray<Anchor> mAnchors = new SparseArray<Anchor>();
+    private final ArrayList<ViewGroup> mPlaceholders = new ArrayList<ViewGroup>(MAX_PLACEHOLDERS);
+    private final int[] mLocation = new int[2];
+
+    static MenuAnchorCache get(Activity activity) {
+        // Keep the cache on the decor view, so it goes away with the activity.
+        View decorView = activity.getWindow().getDecorView();
+        MenuAnchorCache cache = (MenuAnchorCache)decorView.getTag(R.id.tooltip_menu_anchors);
+        if(cache == null) {
+            cache = new MenuAnchorCache(activity);
+            decorView.setTag(R.id.tooltip_menu_anchors, cache);
+        }
+        return cache;
+    }
+
+    private MenuAnchorCache(Activity activity) {
+        mActivity = activity;
+        mLayoutInflater = (LayoutInflater)activity.getSystemService(Activity.LAYOUT_INFLATER_SERVICE);
+        mConfiguration = new Configuration(activity.getResources().getConfiguration());
+    }
+
+    /**
+     * Get the window bounds of the menu item, if they're known and still valid.
+     *
+     * @return true if the bounds were set, false if the item must be located again
+     */
+    boolean getBounds(int itemId, Rect outBounds) {
+        Configuration configuration = mActivity.getResources().getConfiguration();
+        if(configuration.diff(mConfiguration) != 0) {
+            mConfiguration.setTo(configuration);
+            mAnchors.clear();
+            return false;
+        }
+
+        Anchor anchor = mAnchors.get(itemId);
+        if(anchor == null)
+            return false;
+
+        View container = anchor.mContainer;
+        if(container.getWindowToken() == null
+                || container.getWidth() != anchor.mContainerWidth
+                || container.getHeight() != anchor.mContainerHeight) {
+            mAnchors.remove(itemId);
+            return false;
+        }
+
+        container.getLocationInWindow(mLocation);
+        outBounds.set(anchor.mBounds);
+        outBounds.offset(mLocation[0], mLocation[1]);
+        return true;
+    }
+
+    /**
+     * Whether the action items holding the menu item with known bounds are shown.
+     */
+    boolean isShown(int itemId) {
+        Anchor anchor = mAnchors.get(itemId);
+        return anchor != null && anchor.mContainer.isShown();
+    }
+
+    /**
+     * Remember the bounds of a laid out placeholder standing in for the menu item.
+     */
+    void putBounds(int itemId, View placeholder) {
+        ViewParent parent = placeholder.getParent();
+        if(!(parent instanceof View))
+            return;
+
+        View container = (View)parent;
+        Anchor anchor = mAnchors.get(itemId);
+        if(anchor == null) {
+            anchor = new Anchor();
+            mAnchors.put(itemId, anchor);
+        }
+        anchor.mContainer = container;
+        anchor.mContainerWidth = container.getWidth();
+        anchor.mContainerHeight = container.getHeight();
+        anchor.mBounds.set(
+                placeholder.getLeft(), placeholder.getTop(), placeholder.getRight(), placeholder.getBottom());
+    }
+
+    /**
+     * Get a placeholder showing the icon, reusing a recycled one when possible.
+     */
+    ViewGroup obtainPlaceholder(Drawable icon) {
+        ViewGroup placeholder = null;
+        for(int i = mPlaceholders.size() - 1; i >= 0 && placeholder == null; i--) {
+            // The action bar may not have let go of it yet.
+            if(mPlaceholders.get(i).getParent() == null)
+                placeholder = mPlaceholders.remove(i);
+        }
+
+        if(placeholder == null) {
+            placeholder = (ViewGroup)mLayoutInflater.inflate(
+                    R.layout.ab_placeholder_item, new LinearLayout(mActivity), false);
+        }
+
+        if(placeholder != null) {
+            ImageView iconView = (ImageView)placeholder.getChildAt(0);
+            if(iconView != null)
+                iconView.setImageDrawable(icon);
+        }
+        return placeholder;
+    }
+
+    void recyclePlaceholder(ViewGroup placeholder) {
+        ImageView iconView = (ImageView)placeholder.getChildAt(0);
+        if(iconView != null)
+            iconView.setImageDrawable(null);
+
+        if(mPlaceholders.size() < MAX_PLACEHOLDERS && !mPlaceholders.contains(placeholder))
+            mPlaceholders.add(placeholder);
+    }
+
+    private static class Anchor {
+        private View mContainer;
+        private int mContainerWidth, mContainerHeight;
+        // Relative to the container.
+        private final Rect mBounds = new Rect();
+    }
+}
@@ -0,0 +1,25 @@
+package com.heavyplayer.tooltip;
+
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+/**
+ * A menu item targeted by a tooltip, whichever menu implementation it comes from.
+ *
+ * Framework menus are supported through {@link Tooltip#setTarget(android.view.Menu, int)}. Other implementations, like
+ * ActionBarSherlock's in the tooltip-sherlock module, are passed to {@link Tooltip#setTarget(MenuItemTarget)}.
+ */
+public interface MenuItemTarget {
+    int getItemId();
+
+    /**
+     * Whether the item is currently in the menu. The other methods are only called when it is.
+     */
+    boolean isAvailable();
+
+    Drawable getIcon();
+
+    View getActionView();
+
+    void setActionView(View view);
+}
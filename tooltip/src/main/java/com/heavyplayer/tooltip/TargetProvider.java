@@ -0,0 +1,35 @@
+package com.heavyplayer.tooltip;
+
+import android.graphics.Rect;
+import android.view.View;
+
+/**
+ * A target that isn't a view of its own, like a point on a chart or a marker on a map drawn by a custom view.
+ *
+ * The provider is asked for the target's bounds whenever the tooltip tracks it, so it should only copy values it
+ * already knows, without allocating. A provider serves a single tooltip at a time.
+ */
+public interface TargetProvider {
+    /**
+     * Write the target's bounds, in the activity window's coordinates, into {@code outBounds}.
+     *
+     * @return true if the target is currently visible, false if not
+     */
+    boolean getTargetBounds(Rect outBounds);
+
+    /**
+     * Get the view drawing the target, whose tree is observed according to the tooltip's tracking mode, or null to
+     * only track the target when it reports moving.
+     */
+    View getTrackedView();
+
+    /**
+     * Set the listener to be invoked by the provider when the target moves, or null. It's set while the tooltip is
+     * shown.
+     */
+    void setOnTargetMovedListener(OnTargetMovedListener listener);
+
+    public interface OnTargetMovedListener {
+        public void onTargetMoved();
+    }
+}
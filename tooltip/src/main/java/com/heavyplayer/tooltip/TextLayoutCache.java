@@ -0,0 +1,191 @@
+package com.heavyplayer.tooltip;
+
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Process-wide LRU cache of the balloons' text layouts, keyed by text, text size and maximum width.
+ *
+ * Layouts can be built ahead of time on a background thread with {@link #prefetch(CharSequence, float, int, Runnable)},
+ * so measuring a balloon on the main thread is just a lookup. Each layout has its own paint, whose color is only
+ * changed on the main thread, right before drawing.
+ *
+ * Cached layouts and keys hold a copy of the text, so a mutable text (eg. a SpannableStringBuilder) changed after the
+ * fact is just a cache miss, instead of corrupting an entry. Texts are compared by their characters and spans.
+ */
+final class TextLayoutCache {
+    private static final int MAX_SIZE = 32;
+    private static final Object[] NO_SPANS = new Object[0];
+
+    private static final LruCache<Key, Layout> sCache = new LruCache<Key, Layout>(MAX_SIZE);
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static ExecutorService sExecutor;
+
+    private TextLayoutCache() {
+    }
+
+    /**
+     * Get the layout of the text, building it on the calling thread if it's not cached.
+     */
+    static Layout get(CharSequence text, float textSize, int maxWidth) {
+        if(text == null)
+            text = "";
+
+        Key key = new Key(text, textSize, maxWidth);
+        Layout layout;
+        synchronized(sCache) {
+            layout = sCache.get(key);
+        }
+
+        if(layout == null) {
+            text = copy(text);
+            layout = build(text, textSize, maxWidth);
+            synchronized(sCache) {
+                sCache.put(new Key(text, textSize, maxWidth), layout);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Build the text's layout on a background thread, unless it's cached, then run the callback on the main thread.
+     * When the layout is already cached, the callback runs right away.
+     */
+    static void prefetch(CharSequence text, final float textSize, final int maxWidth, final Runnable callback) {
+        // The text may change on the main thread while it's laid out.
+        final CharSequence safeText = copy(text != null ? text : "");
+
+        boolean cached;
+        synchronized(sCache) {
+            cached = sCache.get(new Key(safeText, textSize, maxWidth)) != null;
+        }
+
+        if(cached) {
+            callback.run();
+        }
+        else {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    get(safeText, textSize, maxWidth);
+                    sMainHandler.post(callback);
+                }
+            });
+        }
+    }
+
+    private static Layout build(CharSequence text, float textSize, int maxWidth) {
+        TextPaint paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(textSize);
+        paint.setTypeface(Typeface.DEFAULT_BOLD);
+
+        int desiredWidth = (int)Math.ceil(Layout.getDesiredWidth(text, paint));
+        int width = Math.max(0, Math.min(desiredWidth, maxWidth));
+        return new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_CENTER, 1f, 0f, true);
+    }
+
+    /**
+     * Get an immutable copy of the text, with the same spans.
+     */
+    private static CharSequence copy(CharSequence text) {
+        if(text instanceof String || text instanceof SpannedString)
+            return text;
+        else if(text instanceof Spanned)
+            return new SpannedString(text);
+        else
+            return text.toString();
+    }
+
+    private static synchronized Executor getExecutor() {
+        if(sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "TooltipTextLayout");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    private static class Key {
+        private final CharSequence mText;
+        private final float mTextSize;
+        private final int mMaxWidth;
+
+        private Key(CharSequence text, float textSize, int maxWidth) {
+            mText = text;
+            mTextSize = textSize;
+            mMaxWidth = maxWidth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o)
+                return true;
+            if(!(o instanceof Key))
+                return false;
+
+            Key key = (Key)o;
+            return mTextSize == key.mTextSize && mMaxWidth == key.mMaxWidth && equals(mText, key.mText);
+        }
+
+        @Override
+        public int hashCode() {
+            // Like String's, but without copying other texts into one.
+            int result = 0;
+            for(int i = 0; i < mText.length(); i++)
+                result = 31 * result + mText.charAt(i);
+            result = 31 * result + Float.floatToIntBits(mTextSize);
+            result = 31 * result + mMaxWidth;
+            return result;
+        }
+
+        private static boolean equals(CharSequence text, CharSequence other) {
+            if(text == other)
+                return true;
+            if(!TextUtils.equals(text, other))
+                return false;
+
+            // Spans (eg. sizes or styles) change the layout too.
+            Object[] spans = getSpans(text);
+            Object[] otherSpans = getSpans(other);
+            if(spans.length != otherSpans.length)
+                return false;
+            for(int i = 0; i < spans.length; i++) {
+                Spanned spanned = (Spanned)text;
+                Spanned otherSpanned = (Spanned)other;
+                Object span = spans[i];
+                if(span != otherSpans[i]
+                        || spanned.getSpanStart(span) != otherSpanned.getSpanStart(span)
+                        || spanned.getSpanEnd(span) != otherSpanned.getSpanEnd(span)
+                        || spanned.getSpanFlags(span) != otherSpanned.getSpanFlags(span))
+                    return false;
+            }
+            return true;
+        }
+
+        private static Object[] getSpans(CharSequence text) {
+            if(text instanceof Spanned)
+                return ((Spanned)text).getSpans(0, text.length(), Object.class);
+            else
+                return NO_SPANS;
+        }
+    }
+}
@@ -4,64 +4,184 @@ import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.database.DataSetObserver;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Path;
 import android.graphics.PixelFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.ShapeDrawable;
 import android.graphics.drawable.shapes.RoundRectShape;
 import android.os.Build;
-import android.util.TypedValue;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.text.Layout;
 import android.view.Gravity;
-import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
 import android.view.WindowManager;
-import android.view.animation.Animation;
-import android.view.animation.AnimationUtils;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
-import android.widget.TextView;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.ListAdapter;
+
+import com.heavyplayer.tooltip.core.PlacementSolver;
+import com.heavyplayer.tooltip.core.PositionPredictor;
+import com.heavyplayer.tooltip.core.SpatialGrid;
 
 public class Tooltip extends ViewGroup {
-    // TODO: Most of these could/should be settable.
-    private static final int TEXT_SIZE_SP = 15;
-    private static final int ARROW_SIDE_SIZE_DP = 10;
-    private static final int ROUNDED_CORNERS_RADII_DP = 4;
-    private static final int PADDING_VERTICAL_DP = 7;
-    private static final int PADDING_HORIZONTAL_DP = 14;
+    /**
+     * Each tooltip is shown in its own window. This is the default.
+     */
+    public static final int MODE_WINDOW = 0;
+    /**
+     * Tooltips are shown as children of a single {@link TooltipHost} window shared by the activity.
+     */
+    public static final int MODE_HOST = 1;
+    /**
+     * Tooltips are drawn in the activity's own window, on top of its content, so no window is created at all. They're
+     * kept inside the content view, so unlike windows they never cover the action bar.
+     */
+    public static final int MODE_OVERLAY = 2;
+
+    /**
+     * The target is located again on every frame of its view tree. This is the default.
+     */
+    public static final int TRACKING_PRE_DRAW = 0;
+    /**
+     * The target is only located again when something scrolls or is laid out in its view tree, or when it or one of its
+     * parents is shown or hidden, so a static screen costs no tooltip work per frame. Drawn frames only read the
+     * visibility flags of the target and its parents.
+     */
+    public static final int TRACKING_EVENTS = 1;
+
+    /**
+     * Touches on the tooltip's window that aren't handled by the arrow or balloon, including the transparent areas
+     * beside the arrow, are sent again to the activity. This is the default.
+     */
+    public static final int INPUT_REDISPATCH = 0;
+    /**
+     * Only the arrow and balloon take touches, and nothing is sent again: touches on the transparent areas beside the
+     * arrow go straight to the activity's window, as a single uninterrupted gesture. Where the platform doesn't allow
+     * limiting the window's touchable part, those areas drop touches instead.
+     */
+    public static final int INPUT_TOUCHABLE_REGION = 1;
+
+    // How long a frame may spend on a pending show before its remaining steps are postponed.
+    private static final long SHOW_FRAME_BUDGET_MS = 4;
+    // How long after the last move a predicted position is replaced by the exact one.
+    private static final long PREDICTION_SETTLE_DELAY_MS = 50;
 
     private final UpdateWindowListener UPDATE_WINDOW_LISTENER = new UpdateWindowListener();
+    private final UpdateWindowTargetListener UPDATE_WINDOW_TARGET_LISTENER = new UpdateWindowTargetListener();
+    private final ShownChangeListener SHOWN_CHANGE_LISTENER = new ShownChangeListener();
+    private final TargetListDataObserver TARGET_LIST_DATA_OBSERVER = new TargetListDataObserver();
 
     private Activity mActivity;
     private WindowManager mWindowManager;
     private WindowManager.LayoutParams mWindowLayoutParams;
-    private LayoutInflater mLayoutInflater;
+    private int mMode = MODE_WINDOW;
+    private int mTrackingMode = TRACKING_PRE_DRAW;
+    private int mInputMode = INPUT_REDISPATCH;
+    private boolean mDismissOnOutsideTouch = false;
+    private TouchableRegion mTouchableRegion;
+    private boolean mAttachLazily = false;
+    private boolean mStaticContent = false;
+    private long mHiddenDetachDelay = -1;
+    private boolean mIsAttached = false;
+    private final Handler mHandler = new Handler();
+    private final Runnable mHiddenDetachRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if(mIsShown && !mVisible && mIsAttached) {
+                TooltipFrameScheduler.getInstance().cancel(Tooltip.this);
+                detach();
+            }
+        }
+    };
+    private TooltipHost mHost;
     private boolean mVisible;
+    // Window state last sent to the WindowManager, used to skip redundant updates.
+    private int mAppliedWindowX, mAppliedWindowY;
+    private boolean mAppliedVisible;
+    // Whether a window update is pending in the TooltipFrameScheduler, which sets and clears it.
+    boolean mWindowUpdateScheduled = false;
 
     private Rect mTarget;
+    // Scratch objects reused by the per-frame tracking path, so a steady-state frame allocates nothing.
+    private final Rect mPreviousTarget = new Rect();
+    private final Rect mVisibleRect = new Rect();
+    private final int[] mTargetPosition = new int[2];
     private View mTargetView;
+    private final VisibilityTracker mVisibilityTracker = new VisibilityTracker();
+    private final Runnable mVisibilityRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // A visibility change held long enough, so apply it.
+            if(mIsShown && !mIsDismissed)
+                updateWindow();
+        }
+    };
+    private AbsListView mTargetListView;
+    private int mTargetListPosition = AdapterView.INVALID_POSITION;
+    private long mTargetListItemId = AdapterView.INVALID_ROW_ID;
+    // List state when the target item was last looked for, to cheaply skip the lookup while it's off screen.
+    private boolean mTargetListDormant = false;
+    private int mTargetListFirstPosition, mTargetListChildCount, mTargetListItemCount;
+    private ListAdapter mObservedTargetListAdapter;
     private Integer mTargetX, mTargetY;
-    private android.view.Menu mMenu;
-    private com.actionbarsherlock.view.Menu mMenuSherlock;
-    private int mMenuItemId;
+    private TargetProvider mTargetProvider;
+    private MenuItemTarget mMenuItemTarget;
 
     private int mGravity = Gravity.TOP;
     private Point mDisplaySize = new Point();
+    // Where tooltips can go in the window, leaving out the system bars.
+    private Rect mDisplayBounds = new Rect();
+    // Where the window manager, or the host, actually keep tooltips, which may go under the system bars.
+    private Rect mClampBounds = new Rect();
+    private DisplayGeometry mDisplayGeometry;
     private Point mWindowPosition = new Point();
+    private final PlacementSolver mPlacementSolver = new PlacementSolver();
+    private PositionPredictor mPositionPredictor;
+    private final Runnable mPredictionSettleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // The target stopped without any more tracking events, so go back to its exact position.
+            if(mIsShown && !mIsDismissed)
+                updateWindow();
+        }
+    };
+
+    // Entries in the activity's coordinator, so other tooltips avoid this one and its target.
+    private TooltipCoordinator mCoordinator;
+    private int mObstaclesOwner;
+    private int mBoundsEntry = -1, mTargetEntry = -1;
 
     private boolean mIsShown = false;
     private boolean mIsDismissed = false;
+    private PendingShow mPendingShow;
 
     private ArrowView mArrowView;
     private BalloonView mBalloonView;
+    private TooltipAnimator mAnimator;
+    private boolean mPendingShowAnimation = false;
+    // Gravity and balloon position on screen at the last layout, to animate moves to another side.
+    private int mLaidOutGravity = 0;
+    private int mLaidOutBalloonX, mLaidOutBalloonY;
+    private final int[] mLayoutPosition = new int[2];
+    // What changed since the children were measured: the text or style remeasures both, the gravity only the arrow.
+    // A position change alone remeasures nothing, and only lays them out again if it moves them.
+    private boolean mContentDirty = false;
+    private boolean mGravityDirty = false;
+    private int mMeasuredDisplayWidth = -1, mMeasuredDisplayHeight = -1;
+    private int mArrowLeft, mArrowTop, mBalloonLeft, mBalloonTop;
+
+    private TooltipStyle mStyle = TooltipStyle.DEFAULT;
+    private TooltipStyle.Metrics mMetrics;
 
     private int mColor = Color.WHITE;
     private CharSequence mText;
@@ -76,34 +196,16 @@ public class Tooltip extends ViewGroup {
 
         mActivity = activity;
         mWindowManager = (WindowManager)activity.getSystemService(Activity.WINDOW_SERVICE);
-        mLayoutInflater = (LayoutInflater)activity.getSystemService(Activity.LAYOUT_INFLATER_SERVICE);
     }
 
     public void show() {
+        if(mPendingShow != null)
+            mPendingShow.cancel();
+
         // If show(), it's no longer dismissed.
         mIsDismissed = false;
 
-        // Make sure there are no views (in case show() is called twice).
-        removeAllViews();
-
-        // Create and add inner views.
-        mArrowView = new ArrowView(mActivity);
-        addView(mArrowView, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
-        mBalloonView = new BalloonView(mActivity);
-        addView(mBalloonView, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
-        // TODO: Configure the views here instead of having the values read from super (this).
-
-        View.OnClickListener onClickListener = new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                if(mOnClickListener != null)
-                    mOnClickListener.onClick(Tooltip.this);
-                else
-                    dismiss();
-            }
-        };
-        mArrowView.setOnClickListener(onClickListener);
-        mBalloonView.setOnClickListener(onClickListener);
+        prepareViews();
 
         locateTarget(new OnTargetExtractedListener() {
             @Override
@@ -111,47 +213,146 @@ public class Tooltip extends ViewGroup {
                 if(mIsDismissed)
                     return;
 
-                calculateGravity();
-                calculateWindowPosition();
-
-                mWindowLayoutParams = new WindowManager.LayoutParams(
-                        WindowManager.LayoutParams.WRAP_CONTENT,
-                        WindowManager.LayoutParams.WRAP_CONTENT,
-                        mWindowPosition.x,
-                        mWindowPosition.y,
-                        WindowManager.LayoutParams.TYPE_APPLICATION_PANEL,
-                        WindowManager.LayoutParams.FLAG_ALT_FOCUSABLE_IM | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE,
-                        PixelFormat.TRANSLUCENT);
-                mWindowLayoutParams.windowAnimations = R.style.TooltipAnimation;
-                mWindowLayoutParams.gravity = Gravity.LEFT | Gravity.TOP;
-                mWindowManager.addView(Tooltip.this, mWindowLayoutParams);
+                calculateWindowPosition(false);
+                attachShown(visible);
+            }
+        });
+    }
 
-                if(visible) {
-                    mVisible = true;
-                } else {
-                    setVisibility(View.GONE);
-                    mVisible = false;
+    /**
+     * Like {@link #show()}, but split in steps (resolving the target, measuring, placing and attaching) which are
+     * spread over several frames when needed, so no frame spends more than a few milliseconds on it. The text is
+     * measured on a background thread meanwhile, unless it was recently measured for another tooltip with the same
+     * style.
+     *
+     * The {@link OnShowListener} is invoked once the tooltip is shown. Calling {@link #dismiss()} before that cancels
+     * the remaining steps.
+     *
+     * @return the pending show, which can be cancelled
+     */
+    public PendingShow showAsync() {
+        if(mPendingShow != null)
+            mPendingShow.cancel();
+
+        mIsDismissed = false;
+
+        mPendingShow = new PendingShow();
+        mPendingShow.runSteps();
+        return mPendingShow;
+    }
+
+    private void prepareViews() {
+        mVisibilityTracker.clear();
+
+        // Resolve the style's pixel values once, so measuring and drawing only read them.
+        mMetrics = mStyle.resolve(mActivity.getResources().getDisplayMetrics());
+
+        if(mArrowView == null || mBalloonView == null) {
+            // Create and add inner views.
+            mArrowView = new ArrowView(mActivity);
+            addView(mArrowView, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+            mBalloonView = new BalloonView(mActivity);
+            addView(mBalloonView, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+            // TODO: Configure the views here instead of having the values read from super (this).
+
+            View.OnClickListener onClickListener = new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    if(mOnClickListener != null)
+                        mOnClickListener.onClick(Tooltip.this);
+                    else
+                        dismiss();
                 }
+            };
+            mArrowView.setOnClickListener(onClickListener);
+            mBalloonView.setOnClickListener(onClickListener);
 
-                if(mTargetView != null)
-                    mTargetView.getViewTreeObserver().addOnPreDrawListener(UPDATE_WINDOW_LISTENER);
+            mAnimator = TooltipAnimator.create(mArrowView, mBalloonView);
+        }
+        else {
+            // Reuse the views (eg. when recycled through a TooltipPool), only rebinding what may have changed.
+            mArrowView.bind();
+            mBalloonView.bind();
+            mContentDirty = true;
+        }
+    }
 
-                mIsShown = true;
+    private int getWindowFlags() {
+        // Not being focusable already lets touches outside the window through to the activity.
+        int flags = WindowManager.LayoutParams.FLAG_ALT_FOCUSABLE_IM | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE;
+        if(mInputMode == INPUT_TOUCHABLE_REGION && mDismissOnOutsideTouch)
+            flags |= WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH;
+        return flags;
+    }
 
-                if(mOnShowListener != null)
-                    mOnShowListener.onShow(Tooltip.this);
-            }
-        });
+    /**
+     * Attaches the placed tooltip and starts tracking its target.
+     */
+    private void attachShown(boolean visible) {
+        if(mWindowLayoutParams == null) {
+            mWindowLayoutParams = new WindowManager.LayoutParams(
+                    WindowManager.LayoutParams.WRAP_CONTENT,
+                    WindowManager.LayoutParams.WRAP_CONTENT,
+                    mWindowPosition.x,
+                    mWindowPosition.y,
+                    WindowManager.LayoutParams.TYPE_APPLICATION_PANEL,
+                    getWindowFlags(),
+                    PixelFormat.TRANSLUCENT);
+            mWindowLayoutParams.gravity = Gravity.LEFT | Gravity.TOP;
+        }
+        else {
+            mWindowLayoutParams.x = mWindowPosition.x;
+            mWindowLayoutParams.y = mWindowPosition.y;
+            mWindowLayoutParams.flags = getWindowFlags();
+        }
+        mWindowLayoutParams.windowAnimations = R.style.TooltipAnimation;
+        // When attaching lazily, wait until the target is visible.
+        if(visible || !mAttachLazily)
+            attach();
+
+        if(visible) {
+            setVisibility(View.VISIBLE);
+            mVisible = true;
+        } else {
+            setVisibility(View.GONE);
+            mVisible = false;
+
+            // Shown while already hidden, so the target won't be hidden again to start the countdown.
+            if(mIsAttached && mHiddenDetachDelay >= 0)
+                mHandler.postDelayed(mHiddenDetachRunnable, mHiddenDetachDelay);
+        }
+        updateObstacles();
+
+        mAppliedWindowX = mWindowLayoutParams.x;
+        mAppliedWindowY = mWindowLayoutParams.y;
+        mAppliedVisible = mVisible;
+
+        startTracking();
+
+        mIsShown = true;
+
+        if(mOnShowListener != null)
+            mOnShowListener.onShow(Tooltip.this);
     }
 
     public void dismiss() {
-        if(mIsShown) {
-            if(mTargetView != null)
-                mTargetView.getViewTreeObserver().removeOnPreDrawListener(UPDATE_WINDOW_LISTENER);
+        if(mPendingShow != null)
+            mPendingShow.cancel();
 
-            mWindowLayoutParams.windowAnimations = R.style.TooltipAnimation;
-            mWindowManager.updateViewLayout(this, mWindowLayoutParams);
-            mWindowManager.removeView(this);
+        if(mIsShown) {
+            stopTracking();
+            TooltipFrameScheduler.getInstance().cancel(this);
+            mHandler.removeCallbacks(mHiddenDetachRunnable);
+            mHandler.removeCallbacks(mPredictionSettleRunnable);
+            mHandler.removeCallbacks(mVisibilityRunnable);
+            if(mPositionPredictor != null)
+                mPositionPredictor.reset();
+            removeObstacles();
+            mAnimator.cancel();
+            mPendingShowAnimation = false;
+
+            if(mIsAttached)
+                detach();
 
             mIsShown = false;
 
@@ -162,36 +363,220 @@ public class Tooltip extends ViewGroup {
         mIsDismissed = true;
     }
 
+    /**
+     * Clears the target, text and listeners, and restores every setting to its default, so the tooltip can be handed
+     * out again by a {@link TooltipPool}. The inner views, paints and layout params are kept.
+     */
+    void reset() {
+        // Also cancels a pending show, which would otherwise carry on without a target.
+        dismiss();
+
+        mTarget = null;
+        mTargetView = null;
+        mTargetListView = null;
+        mTargetListPosition = AdapterView.INVALID_POSITION;
+        mTargetListItemId = AdapterView.INVALID_ROW_ID;
+        mTargetListDormant = false;
+        mTargetX = mTargetY = null;
+        mTargetProvider = null;
+        mMenuItemTarget = null;
+
+        mMode = MODE_WINDOW;
+        mTrackingMode = TRACKING_PRE_DRAW;
+        mInputMode = INPUT_REDISPATCH;
+        mDismissOnOutsideTouch = false;
+        mAttachLazily = false;
+        mStaticContent = false;
+        mHiddenDetachDelay = -1;
+        mVisibilityTracker.setThresholds(0f, 0);
+        // Also drops the previous user's error statistics.
+        mPositionPredictor = null;
+
+        mStyle = TooltipStyle.DEFAULT;
+        mColor = Color.WHITE;
+        mText = null;
+        mTextColor = Color.BLACK;
+
+        mOnShowListener = null;
+        mOnClickListener = null;
+        mOnDismissListener = null;
+    }
+
+    Activity getActivity() {
+        return mActivity;
+    }
+
+    private void attach() {
+        if(mStaticContent)
+            setContentLayer(true);
+
+        switch(mMode) {
+            case MODE_HOST:
+                mHost = TooltipHost.get(mActivity);
+                mHost.addTooltip(this, mWindowLayoutParams.x, mWindowLayoutParams.y);
+                break;
+
+            case MODE_OVERLAY:
+                mHost = TooltipHost.getInWindow(mActivity);
+                mHost.addTooltip(this, mWindowLayoutParams.x, mWindowLayoutParams.y);
+                break;
+
+            default:
+                mWindowManager.addView(this, mWindowLayoutParams);
+                break;
+        }
+        mIsAttached = true;
+
+        // Animate in once laid out, as it grows from the arrow's tip.
+        mPendingShowAnimation = true;
+        mLaidOutGravity = 0;
+    }
+
+    private void detach() {
+        switch(mMode) {
+            case MODE_HOST:
+            case MODE_OVERLAY:
+                mHost.removeTooltip(this);
+                mHost = null;
+                break;
+
+            default:
+                mWindowLayoutParams.windowAnimations = R.style.TooltipAnimation;
+                mWindowManager.updateViewLayout(this, mWindowLayoutParams);
+                mWindowManager.removeView(this);
+                break;
+        }
+        mIsAttached = false;
+
+        if(mStaticContent)
+            setContentLayer(false);
+    }
+
+    /**
+     * Renders the arrow and balloon into a hardware layer, which is only redrawn when they're invalidated (eg. on text,
+     * color or gravity changes), so moving the tooltip only costs a composite. Does nothing before Honeycomb.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void setContentLayer(boolean enabled) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+            setLayerType(enabled ? View.LAYER_TYPE_HARDWARE : View.LAYER_TYPE_NONE, null);
+    }
+
+    private void startTracking() {
+        if(isTargetProviderUsed())
+            mTargetProvider.setOnTargetMovedListener(UPDATE_WINDOW_LISTENER);
+
+        // A data change can bring the item into view without changing what the dormant list is checked against.
+        if(mTargetListView != null && mTargetListView.getAdapter() != null) {
+            mObservedTargetListAdapter = mTargetListView.getAdapter();
+            mObservedTargetListAdapter.registerDataSetObserver(TARGET_LIST_DATA_OBSERVER);
+        }
+
+        View trackedView = getTrackedView();
+        if(trackedView == null)
+            return;
+
+        ViewTreeObserver observer = trackedView.getViewTreeObserver();
+        // Added first, so it knows about a layout before the target is located again because of it.
+        observer.addOnGlobalLayoutListener(mVisibilityTracker);
+        switch(mTrackingMode) {
+            case TRACKING_EVENTS:
+                observer.addOnScrollChangedListener(UPDATE_WINDOW_LISTENER);
+                observer.addOnGlobalLayoutListener(UPDATE_WINDOW_LISTENER);
+                observer.addOnPreDrawListener(SHOWN_CHANGE_LISTENER);
+                break;
+
+            default:
+                observer.addOnPreDrawListener(UPDATE_WINDOW_LISTENER);
+                break;
+        }
+    }
+
+    @SuppressLint("NewApi")
+    @SuppressWarnings("deprecation")
+    private void stopTracking() {
+        if(isTargetProviderUsed())
+            mTargetProvider.setOnTargetMovedListener(null);
+
+        if(mObservedTargetListAdapter != null) {
+            mObservedTargetListAdapter.unregisterDataSetObserver(TARGET_LIST_DATA_OBSERVER);
+            mObservedTargetListAdapter = null;
+        }
+
+        View trackedView = getTrackedView();
+        if(trackedView == null)
+            return;
+
+        ViewTreeObserver observer = trackedView.getViewTreeObserver();
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            observer.removeOnGlobalLayoutListener(mVisibilityTracker);
+        else
+            observer.removeGlobalOnLayoutListener(mVisibilityTracker);
+
+        switch(mTrackingMode) {
+            case TRACKING_EVENTS:
+                observer.removeOnScrollChangedListener(UPDATE_WINDOW_LISTENER);
+                if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+                    observer.removeOnGlobalLayoutListener(UPDATE_WINDOW_LISTENER);
+                else
+                    observer.removeGlobalOnLayoutListener(UPDATE_WINDOW_LISTENER);
+                observer.removeOnPreDrawListener(SHOWN_CHANGE_LISTENER);
+                break;
+
+            default:
+                observer.removeOnPreDrawListener(UPDATE_WINDOW_LISTENER);
+                break;
+        }
+    }
+
     private void updateWindow() {
-        locateTarget(new OnTargetExtractedListener() {
-            @Override
-            public void onTargetExtracted(boolean immediate, boolean visible, boolean changed) {
-                if(changed && mIsShown && !mIsDismissed) {
-                    calculateWindowPosition();
+        locateTarget(UPDATE_WINDOW_TARGET_LISTENER);
+    }
 
-                    if(mVisible && !visible) {
-                        mWindowLayoutParams.windowAnimations = R.style.TooltipAnimation;
-                        setVisibility(View.GONE);
-                        mVisible = false;
-                    }
-                    else if(!mVisible && visible) {
-                        // Don't use the WindowManager's animation since it doesn't onLayout() until it ends.
-                        Animation inAnim = AnimationUtils.loadAnimation(mActivity, android.R.anim.fade_in);
-                        mArrowView.startAnimation(inAnim);
-                        mBalloonView.startAnimation(inAnim);
-
-                        mWindowLayoutParams.windowAnimations = 0;
-                        setVisibility(View.VISIBLE);
-                        mVisible = true;
-                    }
+    /**
+     * Places the shown tooltip again at its last known target location, eg. after its size changed.
+     */
+    private void updatePlacement() {
+        calculateWindowPosition(false);
+        updateObstacles();
+
+        mWindowLayoutParams.x = mWindowPosition.x;
+        mWindowLayoutParams.y = mWindowPosition.y;
+        if(mIsAttached) {
+            if(mMode != MODE_WINDOW)
+                applyWindowUpdate();
+            else
+                TooltipFrameScheduler.getInstance().schedule(this);
+        }
+    }
 
-                    mWindowLayoutParams.x = mWindowPosition.x;
-                    mWindowLayoutParams.y = mWindowPosition.y;
+    /**
+     * Sends the pending window position to the WindowManager. Called by {@link TooltipFrameScheduler} right after the
+     * traversal that moved the tooltip.
+     */
+    void applyWindowUpdate() {
+        if(!mIsShown || mIsDismissed || !mIsAttached)
+            return;
+
+        if(mWindowLayoutParams.x == mAppliedWindowX && mWindowLayoutParams.y == mAppliedWindowY
+                && mVisible == mAppliedVisible)
+            return;
+
+        switch(mMode) {
+            case MODE_HOST:
+            case MODE_OVERLAY:
+                // Visibility was already applied to this view, only the position is left.
+                mHost.setTooltipPosition(this, mWindowLayoutParams.x, mWindowLayoutParams.y);
+                break;
 
-                    mWindowManager.updateViewLayout(Tooltip.this, mWindowLayoutParams);
-                }
-            }
-        });
+            default:
+                mWindowManager.updateViewLayout(this, mWindowLayoutParams);
+                break;
+        }
+
+        mAppliedWindowX = mWindowLayoutParams.x;
+        mAppliedWindowY = mWindowLayoutParams.y;
+        mAppliedVisible = mVisible;
     }
 
     /**
@@ -201,6 +586,31 @@ public class Tooltip extends ViewGroup {
         mTargetView = targetView;
     }
 
+    /**
+     * Set the list item which is targeted by this tooltip, by its adapter position.
+     *
+     * Unlike targeting the item's view, the tooltip keeps following the item as views are recycled, and goes dormant
+     * while the item is scrolled out of view.
+     */
+    public void setTarget(AbsListView listView, int position) {
+        mTargetListView = listView;
+        mTargetListPosition = position;
+        mTargetListItemId = AdapterView.INVALID_ROW_ID;
+        mTargetListDormant = false;
+    }
+
+    /**
+     * Set the list item which is targeted by this tooltip, by its id. The list's adapter must have stable ids.
+     *
+     * @see #setTarget(AbsListView, int)
+     */
+    public void setTargetItemId(AbsListView listView, long itemId) {
+        mTargetListView = listView;
+        mTargetListPosition = AdapterView.INVALID_POSITION;
+        mTargetListItemId = itemId;
+        mTargetListDormant = false;
+    }
+
     /**
      * Set the coordinates which are targeted by this tooltip.
      *
@@ -212,6 +622,16 @@ public class Tooltip extends ViewGroup {
         mTargetY = targetY;
     }
 
+    /**
+     * Set the provider of the target's bounds, for targets drawn inside a custom view.
+     *
+     * Besides the tracking mode, the target is located again whenever the provider reports it moved, so with
+     * {@link #TRACKING_EVENTS} a custom view animating it costs no tooltip work on the frames where it doesn't move.
+     */
+    public void setTarget(TargetProvider targetProvider) {
+        mTargetProvider = targetProvider;
+    }
+
     /**
      * Set the menu item targeted by this tooltip.
      *
@@ -220,33 +640,156 @@ public class Tooltip extends ViewGroup {
      */
     @TargetApi(Build.VERSION_CODES.HONEYCOMB)
     public void setTarget(android.view.Menu menu, int menuItemId) {
-        android.view.MenuItem item = menu.findItem(menuItemId);
-        View actionView = item.getActionView();
-        if(actionView != null) {
-            setTarget(actionView);
-        }
-        else {
-            mMenu = menu;
-            mMenuItemId = menuItemId;
-        }
+        setTarget(new FrameworkMenuItemTarget(menu, menuItemId));
     }
 
     /**
-     * Set the menu item targeted by this tooltip.
+     * Set the menu item targeted by this tooltip, for menus other than the framework's (eg. ActionBarSherlock's, with
+     * the tooltip-sherlock module).
      *
      * Only visible Action Bar menu items are supported. When used with collapsed
      * menu items, or the old bottom menus, the behaviour is undefined.
      */
-    public void setTarget(com.actionbarsherlock.view.Menu menu, int menuItemId) {
-        com.actionbarsherlock.view.MenuItem item = menu.findItem(menuItemId);
-        View actionView = item.getActionView();
-        if(actionView != null) {
+    public void setTarget(MenuItemTarget menuItemTarget) {
+        View actionView = menuItemTarget.getActionView();
+        if(actionView != null)
             setTarget(actionView);
-        }
-        else {
-            mMenuSherlock = menu;
-            mMenuItemId = menuItemId;
-        }
+        else
+            mMenuItemTarget = menuItemTarget;
+    }
+
+    /**
+     * Set how the tooltip is attached to the screen, either {@link #MODE_WINDOW}, {@link #MODE_HOST} or
+     * {@link #MODE_OVERLAY}.
+     *
+     * Must be called before {@link #show()}.
+     */
+    public void setMode(int mode) {
+        if(mIsShown)
+            throw new IllegalStateException("The mode can't be changed while the tooltip is shown.");
+
+        mMode = mode;
+    }
+
+    /**
+     * Set the style used to draw the tooltip. Takes effect on the next {@link #show()}.
+     */
+    public void setStyle(TooltipStyle style) {
+        mStyle = style != null ? style : TooltipStyle.DEFAULT;
+    }
+
+    /**
+     * Set how the target is tracked while the tooltip is shown, either {@link #TRACKING_PRE_DRAW} or
+     * {@link #TRACKING_EVENTS}.
+     *
+     * Must be called before {@link #show()}.
+     */
+    public void setTrackingMode(int trackingMode) {
+        if(mIsShown)
+            throw new IllegalStateException("The tracking mode can't be changed while the tooltip is shown.");
+
+        mTrackingMode = trackingMode;
+    }
+
+    /**
+     * Set how touches on the tooltip's window are routed, either {@link #INPUT_REDISPATCH} or
+     * {@link #INPUT_TOUCHABLE_REGION}. Only applies to {@link #MODE_WINDOW}; use {@link #MODE_OVERLAY} for hosted
+     * tooltips that let touches through.
+     *
+     * Must be called before {@link #show()}.
+     */
+    public void setInputMode(int inputMode) {
+        if(mIsShown)
+            throw new IllegalStateException("The input mode can't be changed while the tooltip is shown.");
+
+        mInputMode = inputMode;
+    }
+
+    /**
+     * Set whether the tooltip is dismissed when a touch lands outside of it. Only works with
+     * {@link #INPUT_TOUCHABLE_REGION}, where the touch still reaches the activity. Off by default.
+     *
+     * Must be called before {@link #show()}.
+     */
+    public void setDismissOnOutsideTouch(boolean dismissOnOutsideTouch) {
+        if(mIsShown)
+            throw new IllegalStateException("Dismissing on outside touches can't be changed while the tooltip is shown.");
+
+        mDismissOnOutsideTouch = dismissOnOutsideTouch;
+    }
+
+    /**
+     * Set whether the tooltip's window (or host child) is only attached once the target first becomes visible, instead
+     * of right away in {@link #show()}. Off by default.
+     *
+     * Must be called before {@link #show()}.
+     */
+    public void setAttachLazily(boolean attachLazily) {
+        if(mIsShown)
+            throw new IllegalStateException("The tooltip can't be made lazy while it's shown.");
+
+        mAttachLazily = attachLazily;
+    }
+
+    /**
+     * Set whether the tooltip's content is rendered once into a hardware layer and then only composited while the
+     * tooltip moves. It's rendered again when the text, color or gravity change. Useful for tooltips on targets that
+     * scroll a lot. Off by default, and ignored before Honeycomb.
+     */
+    public void setStaticContent(boolean staticContent) {
+        mStaticContent = staticContent;
+        if(mIsAttached)
+            setContentLayer(staticContent);
+    }
+
+    /**
+     * Set how long the target must stay hidden before the tooltip's window (or host child) is detached, freeing its
+     * surface. It's attached again when the target becomes visible. A negative delay, the default, never detaches.
+     */
+    public void setHiddenDetachDelay(long delayMillis) {
+        mHiddenDetachDelay = delayMillis;
+    }
+
+    /**
+     * Set how visible a view or list item target must be for the tooltip to show, and how long a change must hold
+     * before the tooltip is shown or hidden. The tooltip is hidden again once less than half that fraction is visible.
+     * By default, any visible pixel shows it right away.
+     *
+     * @param minVisibleFraction the fraction of the target's area, from 0 to 1
+     * @param dwellMillis how long the target must stay visible, or hidden, before the tooltip follows
+     */
+    public void setVisibilityThreshold(float minVisibleFraction, long dwellMillis) {
+        mVisibilityTracker.setThresholds(minVisibleFraction, dwellMillis);
+    }
+
+    /**
+     * Set whether the tooltip's position is extrapolated one frame ahead while its target moves, so it doesn't trail
+     * the target during flings. It goes back to the exact position when the target stops. Off by default.
+     */
+    public void setPositionPrediction(boolean enabled) {
+        if(enabled && mPositionPredictor == null)
+            mPositionPredictor = new PositionPredictor();
+        else if(!enabled)
+            mPositionPredictor = null;
+    }
+
+    /**
+     * Get the predictor used when {@link #setPositionPrediction(boolean)} is on, to read how far its predictions were
+     * off, or null when it's off.
+     */
+    public PositionPredictor getPositionPredictor() {
+        return mPositionPredictor;
+    }
+
+    /**
+     * Locate the target again, and move the tooltip if needed.
+     *
+     * Only needed with {@link #TRACKING_EVENTS}, when the target moves without anything scrolling or being laid out,
+     * eg. when it or one of its parents is translated by an animation.
+     */
+    public void invalidateTarget() {
+        if(mIsShown && !mIsDismissed)
+            updateWindow();
     }
 
     /**
@@ -254,6 +797,12 @@ public class Tooltip extends ViewGroup {
      */
     public void setColor(int color) {
         mColor = color;
+
+        // Only a redraw is needed, even while shown.
+        if(mBalloonView != null) {
+            mBalloonView.bindColor();
+            mArrowView.invalidate();
+        }
     }
 
     /**
@@ -261,6 +810,15 @@ public class Tooltip extends ViewGroup {
      */
     public void setText(CharSequence text) {
         mText = text;
+
+        if(mBalloonView != null) {
+            mBalloonView.bind();
+            mContentDirty = true;
+
+            // The size changed, so place the tooltip again.
+            if(mIsShown && !mIsDismissed)
+                updatePlacement();
+        }
     }
 
     /**
@@ -268,6 +826,9 @@ public class Tooltip extends ViewGroup {
      */
     public void setTextColor(int textColor) {
         mTextColor = textColor;
+
+        if(mBalloonView != null)
+            mBalloonView.invalidate();
     }
 
     /**
@@ -293,167 +854,324 @@ public class Tooltip extends ViewGroup {
 
     @SuppressLint("NewApi")
     private void locateTarget(final OnTargetExtractedListener onTargetExtractedListener) {
-        final Rect previousTarget = mTarget;
+        final boolean hadTarget = mTarget != null;
+        if(hadTarget)
+            mPreviousTarget.set(mTarget);
+        else
+            mTarget = new Rect();
 
         if(mTargetX != null && mTargetY != null) {
-            mTarget = new Rect(mTargetX, mTargetY, mTargetX, mTargetY);
+            mTarget.set(mTargetX, mTargetY, mTargetX, mTargetY);
 
             if(onTargetExtractedListener != null) {
                 calculateDisplaySize();
                 onTargetExtractedListener.onTargetExtracted(
                         true,
                         ((mTarget.right >= 0 || mTarget.left <= mDisplaySize.x) && (mTarget.top >= 0 || mTarget.bottom <= mDisplaySize.y)),
-                        !mTarget.equals(previousTarget)
+                        !hadTarget || !mTarget.equals(mPreviousTarget)
                 );
             }
         }
         else if(mTargetView != null) {
             locateTargetByView(mTargetView);
+            boolean moved = !hadTarget || !mTarget.equals(mPreviousTarget);
+            boolean wasVisible = mVisibilityTracker.isVisible();
+            boolean visible = isTargetViewVisible(mTargetView, moved);
 
             if(onTargetExtractedListener != null) {
-                Rect rect = new Rect();
                 onTargetExtractedListener.onTargetExtracted(
                         true,
-                        mTargetView.getLocalVisibleRect(rect) && mTargetView.isShown(),
-                        !mTarget.equals(previousTarget)
+                        visible,
+                        moved || visible != wasVisible
                 );
             }
         }
-        else if(mMenu != null) {
-            final android.view.MenuItem item = mMenu.findItem(mMenuItemId);
-            if(item != null) {
-                final ViewGroup actionView = getActionView(item.getIcon());
+        else if(mTargetListView != null) {
+            boolean wasDormant = mTargetListDormant;
+            View itemView = findTargetListItemView();
+
+            if(itemView != null) {
+                locateTargetByView(itemView);
+                boolean moved = wasDormant || !hadTarget || !mTarget.equals(mPreviousTarget);
+                boolean wasVisible = mVisibilityTracker.isVisible();
+                boolean visible = isTargetViewVisible(itemView, moved);
+
+                if(onTargetExtractedListener != null) {
+                    onTargetExtractedListener.onTargetExtracted(
+                            true,
+                            visible,
+                            moved || visible != wasVisible
+                    );
+                }
+            }
+            else {
+                mVisibilityTracker.reset(false);
 
-                if(actionView != null) {
-                    item.setActionView(actionView);
-                    actionView.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            locateTargetByView(actionView);
+                // Keep the last known location, it's hidden anyway. Only report a change when going dormant.
+                if(onTargetExtractedListener != null)
+                    onTargetExtractedListener.onTargetExtracted(true, false, !wasDormant);
+            }
+        }
+        else if(mTargetProvider != null) {
+            boolean visible = mTargetProvider.getTargetBounds(mTarget);
+
+            if(onTargetExtractedListener != null) {
+                onTargetExtractedListener.onTargetExtracted(
+                        true,
+                        visible,
+                        !hadTarget || !mTarget.equals(mPreviousTarget)
+                );
+            }
+        }
+        else if(mMenuItemTarget != null) {
+            if(mMenuItemTarget.isAvailable())
+                locateMenuTarget(hadTarget, mMenuItemTarget, onTargetExtractedListener);
+        }
+        else {
+            mTarget = null;
+            if(onTargetExtractedListener != null)
+                onTargetExtractedListener.onTargetExtracted(true, false, hadTarget);
+        }
+    }
+
+    /**
+     * Get the view whose tree is observed to track the target.
+     */
+    private View getTrackedView() {
+        if(mTargetView != null)
+            return mTargetView;
+        else if(mTargetListView != null)
+            return mTargetListView;
+        else if(isTargetProviderUsed())
+            return mTargetProvider.getTrackedView();
+        else
+            return null;
+    }
+
+    /**
+     * Get whether the target view is visible enough, only measuring its visible part again when it moved or something
+     * was laid out.
+     */
+    private boolean isTargetViewVisible(View view, boolean moved) {
+        mVisibilityTracker.setView(view);
+        if(moved)
+            mVisibilityTracker.invalidate();
+        boolean visible = mVisibilityTracker.update();
+
+        // Nothing else may locate the target again once a pending change is due.
+        mHandler.removeCallbacks(mVisibilityRunnable);
+        long delay = mVisibilityTracker.getPendingDelay();
+        if(delay >= 0)
+            mHandler.postDelayed(mVisibilityRunnable, delay);
+
+        return visible;
+    }
 
-                            if(onTargetExtractedListener != null)
-                                onTargetExtractedListener.onTargetExtracted(
-                                        false,
-                                        actionView.getLocalVisibleRect(new Rect()) && actionView.isShown(),
-                                        !mTarget.equals(previousTarget)
-                                );
+    /**
+     * Whether the target provider is used, as the fixed point, view and list item targets take precedence.
+     */
+    private boolean isTargetProviderUsed() {
+        return mTargetProvider != null
+                && (mTargetX == null || mTargetY == null) && mTargetView == null && mTargetListView == null;
+    }
 
-                            item.setActionView(null);
-                        }
-                    });
-                }
+    /**
+     * Get the view currently showing the targeted list item, or null when it's not in view. Only visible children
+     * are looked at, and nothing at all while dormant until the list scrolls or its data changes.
+     */
+    private View findTargetListItemView() {
+        int firstPosition = mTargetListView.getFirstVisiblePosition();
+        int childCount = mTargetListView.getChildCount();
+        int itemCount = mTargetListView.getCount();
+
+        if(mTargetListDormant
+                && firstPosition == mTargetListFirstPosition
+                && childCount == mTargetListChildCount
+                && itemCount == mTargetListItemCount)
+            return null;
+
+        mTargetListFirstPosition = firstPosition;
+        mTargetListChildCount = childCount;
+        mTargetListItemCount = itemCount;
+
+        View itemView = null;
+        if(mTargetListItemId != AdapterView.INVALID_ROW_ID) {
+            for(int i = 0; i < childCount && itemView == null; i++) {
+                if(mTargetListView.getItemIdAtPosition(firstPosition + i) == mTargetListItemId)
+                    itemView = mTargetListView.getChildAt(i);
             }
         }
-        else if(mMenuSherlock != null) {
-            final com.actionbarsherlock.view.MenuItem item = mMenuSherlock.findItem(mMenuItemId);
-            if(item != null) {
-                final ViewGroup actionView = getActionView(item.getIcon());
-
-                item.setActionView(actionView);
-                if(actionView != null) {
-                    actionView.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            locateTargetByView(actionView);
+        else {
+            int index = mTargetListPosition - firstPosition;
+            if(index >= 0 && index < childCount)
+                itemView = mTargetListView.getChildAt(index);
+        }
 
-                            if(onTargetExtractedListener != null)
-                                onTargetExtractedListener.onTargetExtracted(
-                                        false,
-                                        actionView.getLocalVisibleRect(new Rect()) && actionView.isShown(),
-                                        !mTarget.equals(previousTarget)
-                                );
+        mTargetListDormant = itemView == null;
+        return itemView;
+    }
 
-                            item.setActionView(null);
-                        }
-                    });
-                }
+    /**
+     * Locate a menu item from the bounds cached by {@link MenuAnchorCache}. The first time, a placeholder is swapped in
+     * for the item, and it's located asynchronously once the action bar is laid out.
+     */
+    @SuppressLint("NewApi")
+    private void locateMenuTarget(boolean hadTarget, final MenuItemTarget item,
+                                  final OnTargetExtractedListener onTargetExtractedListener) {
+        final MenuAnchorCache cache = MenuAnchorCache.get(mActivity);
+        final int menuItemId = item.getItemId();
+        if(cache.getBounds(menuItemId, mTarget)) {
+            if(onTargetExtractedListener != null) {
+                onTargetExtractedListener.onTargetExtracted(
+                        true,
+                        cache.isShown(menuItemId),
+                        !hadTarget || !mTarget.equals(mPreviousTarget)
+                );
             }
+            return;
         }
-        else if(onTargetExtractedListener != null) {
-            onTargetExtractedListener.onTargetExtracted(true, false, previousTarget != null);
-        }
-    }
 
-    private ViewGroup getActionView(Drawable icon) {
-        ViewGroup actionView = (ViewGroup)mLayoutInflater.inflate(R.layout.ab_placeholder_item, new LinearLayout(mActivity), false);
+        // Menu targets are resolved asynchronously, so snapshot the previous target.
+        final Rect previousTarget = hadTarget ? new Rect(mPreviousTarget) : null;
+        final ViewGroup actionView = cache.obtainPlaceholder(item.getIcon());
         if(actionView != null) {
-            ImageView iconView = (ImageView)actionView.getChildAt(0);
-            if(iconView != null)
-                iconView.setImageDrawable(icon);
+            item.setActionView(actionView);
+            actionView.post(new Runnable() {
+                @Override
+                public void run() {
+                    locateTargetByView(actionView);
+                    cache.putBounds(menuItemId, actionView);
+
+                    if(onTargetExtractedListener != null)
+                        onTargetExtractedListener.onTargetExtracted(
+                                false,
+                                actionView.getLocalVisibleRect(mVisibleRect) && actionView.isShown(),
+                                !mTarget.equals(previousTarget)
+                        );
+
+                    item.setActionView(null);
+                    cache.recyclePlaceholder(actionView);
+                }
+            });
         }
-        return actionView;
     }
 
-    private void calculateGravity() {
+    /**
+     * Picks the side and alignment that best fit the measured balloon, and calculates the window position.
+     *
+     * @param keepGravity true to keep the side unless it covers other tooltips, eg. while tracking the target
+     */
+    private void calculateWindowPosition(boolean keepGravity) {
         if(mTarget == null)
             throw new IllegalStateException("You must set some target.");
 
         calculateDisplaySize();
 
-        // Multiply each space by the opposite action to uniform the scale.
-        int leftSpace = mTarget.left * mDisplaySize.y;
-        int topSpace = mTarget.top * mDisplaySize.x;
-        int rightSpace = (mDisplaySize.x - mTarget.right) * mDisplaySize.y;
-        int bottomSpace = (mDisplaySize.y - mTarget.bottom) * mDisplaySize.x;
+        boolean resized = ensureChildrenMeasured();
+
+        mPlacementSolver.setTarget(mTarget.left, mTarget.top, mTarget.right, mTarget.bottom);
+        mPlacementSolver.setDisplayBounds(
+                mDisplayBounds.left, mDisplayBounds.top, mDisplayBounds.right, mDisplayBounds.bottom);
+        mPlacementSolver.setClampBounds(mClampBounds.left, mClampBounds.top, mClampBounds.right, mClampBounds.bottom);
+        mPlacementSolver.setArrowSize(mArrowView.getMeasuredWidth(), mArrowView.getMeasuredHeight());
+        mPlacementSolver.setBalloonSize(mBalloonView.getMeasuredWidth(), mBalloonView.getMeasuredHeight());
+        mPlacementSolver.setRoundedCornersRadii(getRoundedCornersRadii());
+        ensureObstacles();
+        int gravity = keepGravity ? mPlacementSolver.solveTracked() : mPlacementSolver.solve(0);
+
+        if(gravity != mGravity) {
+            mGravity = gravity;
+
+            // Only the arrow's orientation depends on the gravity, so there's no need to measure the balloon again.
+            mGravityDirty = true;
+            ensureChildrenMeasured();
+            mArrowView.invalidate();
+            resized = true;
+        }
 
-        int mostSpacious = Math.max(leftSpace, Math.max(topSpace, Math.max(rightSpace, bottomSpace)));
+        mWindowPosition.x = mPlacementSolver.getX();
+        mWindowPosition.y = mPlacementSolver.getY();
 
-        // Prefer TOP or BOTTOM by allowing them to be up to 30% smaller.
-        if(topSpace == mostSpacious || (bottomSpace != mostSpacious && topSpace > 0.7 * mostSpacious))
-            mGravity = Gravity.TOP;
-        else if(bottomSpace == mostSpacious || (topSpace != mostSpacious && bottomSpace > 0.7 * mostSpacious))
-            mGravity = Gravity.BOTTOM;
-        else if(leftSpace == mostSpacious)
-            mGravity = Gravity.LEFT;
-        else if(rightSpace == mostSpacious)
-            mGravity = Gravity.RIGHT;
+        // Near the display's edges, the position also moves the children.
+        if(updateChildLayout(mPlacementSolver.getWidth(), mPlacementSolver.getHeight()) || resized)
+            requestLayout();
     }
 
-    private void calculateWindowPosition() {
-        calculateDisplaySize();
-
-        ensureChildrenMeasured();
-        int arrowWidth = mArrowView.getMeasuredWidth();
-        int arrowHeight = mArrowView.getMeasuredHeight();
-        int balloonWidth = mBalloonView.getMeasuredWidth();
-        int balloonHeight = mBalloonView.getMeasuredHeight();
-
-        int targetCenterX = getTargetVisibleCenterX();
-        int targetCenterY = getTargetVisibleCenterY();
-        int targetWidth = getTargetVisibleWidth();
-        int targetHeight = getTargetVisibleHeight();
+    /**
+     * Positions the children for the current gravity and window position.
+     *
+     * @return true if any child moved
+     */
+    private boolean updateChildLayout(int width, int height) {
+        mPlacementSolver.setDisplayBounds(
+                mDisplayBounds.left, mDisplayBounds.top, mDisplayBounds.right, mDisplayBounds.bottom);
+        mPlacementSolver.setClampBounds(mClampBounds.left, mClampBounds.top, mClampBounds.right, mClampBounds.bottom);
+        mPlacementSolver.setArrowSize(mArrowView.getMeasuredWidth(), mArrowView.getMeasuredHeight());
+        mPlacementSolver.setBalloonSize(mBalloonView.getMeasuredWidth(), mBalloonView.getMeasuredHeight());
+        mPlacementSolver.setRoundedCornersRadii(getRoundedCornersRadii());
+        mPlacementSolver.setGravity(mGravity);
+        mPlacementSolver.setPosition(mWindowPosition.x, mWindowPosition.y);
+        mPlacementSolver.solveLayout(width, height);
+
+        int arrowLeft = mPlacementSolver.getArrowLeft();
+        int arrowTop = mPlacementSolver.getArrowTop();
+        int balloonLeft = mPlacementSolver.getBalloonLeft();
+        int balloonTop = mPlacementSolver.getBalloonTop();
+        if(arrowLeft == mArrowLeft && arrowTop == mArrowTop && balloonLeft == mBalloonLeft && balloonTop == mBalloonTop)
+            return false;
+
+        mArrowLeft = arrowLeft;
+        mArrowTop = arrowTop;
+        mBalloonLeft = balloonLeft;
+        mBalloonTop = balloonTop;
+        return true;
+    }
 
-        // Set common properties.
-        switch(mGravity) {
-            case Gravity.TOP:
-            case Gravity.BOTTOM:
-                mWindowPosition.x = targetCenterX - balloonWidth / 2;
-                break;
+    private void ensureObstacles() {
+        if(mCoordinator == null) {
+            mCoordinator = TooltipCoordinator.get(mActivity);
+            mObstaclesOwner = mCoordinator.obtainOwner();
+        }
 
-            case Gravity.LEFT:
-            case Gravity.RIGHT:
-                mWindowPosition.y = targetCenterY - balloonHeight / 2;
-                break;
+        SpatialGrid grid = mCoordinator.getGrid();
+        if(mBoundsEntry == -1) {
+            mBoundsEntry = grid.add(mObstaclesOwner);
+            mTargetEntry = grid.add(mObstaclesOwner);
         }
+        grid.setBounds(mDisplayBounds.right, mDisplayBounds.bottom);
 
-        // Set individual properties.
-        switch(mGravity) {
-            case Gravity.TOP:
-                mWindowPosition.y = mTarget.top - balloonHeight - Math.min(arrowHeight / 2, targetHeight / 2);
-                break;
+        mPlacementSolver.setObstacles(grid, mObstaclesOwner);
+    }
 
-            case Gravity.BOTTOM:
-                mWindowPosition.y = mTarget.bottom - Math.min(arrowHeight / 2, targetHeight / 2);
-                break;
+    /**
+     * Publishes the tooltip's and target's bounds, once placed, so other tooltips avoid them. Hidden tooltips don't
+     * get in the way.
+     */
+    private void updateObstacles() {
+        if(mBoundsEntry == -1)
+            return;
+
+        SpatialGrid grid = mCoordinator.getGrid();
+        if(mVisible) {
+            grid.update(mBoundsEntry,
+                    mWindowPosition.x, mWindowPosition.y,
+                    mWindowPosition.x + mPlacementSolver.getWidth(), mWindowPosition.y + mPlacementSolver.getHeight());
+            grid.update(mTargetEntry, mTarget.left, mTarget.top, mTarget.right, mTarget.bottom);
+        }
+        else {
+            grid.update(mBoundsEntry, 0, 0, 0, 0);
+            grid.update(mTargetEntry, 0, 0, 0, 0);
+        }
+    }
 
-            case Gravity.LEFT:
-                mWindowPosition.x = mTarget.left - balloonWidth - Math.min(arrowWidth / 2, targetWidth / 2);
-                break;
+    private void removeObstacles() {
+        if(mBoundsEntry == -1)
+            return;
 
-            case Gravity.RIGHT:
-                mWindowPosition.x = mTarget.right - Math.min(arrowWidth / 2, targetWidth / 2);
-                break;
-        }
+        SpatialGrid grid = mCoordinator.getGrid();
+        grid.remove(mBoundsEntry);
+        grid.remove(mTargetEntry);
+        mBoundsEntry = mTargetEntry = -1;
     }
 
     @Override
@@ -483,156 +1201,216 @@ public class Tooltip extends ViewGroup {
 
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        calculateDisplaySize();
-
-        int width = right - left;
-        int height = bottom - top;
-
         ensureChildrenMeasured();
         int arrowWidth = mArrowView.getMeasuredWidth();
         int arrowHeight = mArrowView.getMeasuredHeight();
         int balloonWidth = mBalloonView.getMeasuredWidth();
         int balloonHeight = mBalloonView.getMeasuredHeight();
 
-        // Set the positions.
-        int arrowLeft = trim(0, mWindowPosition.x + width - mDisplaySize.x, mWindowPosition.x);
-        int arrowTop = trim(0, mWindowPosition.y + height - mDisplaySize.y, mWindowPosition.y);
-        int balloonLeft = arrowLeft;
-        int balloonTop = arrowTop;
+        // Usually already done when the tooltip was placed, unless the window was clamped to another size.
+        if(changed)
+            updateChildLayout(right - left, bottom - top);
 
-        // Position arrow and balloon with respect to each other.
-        switch(mGravity) {
-            case Gravity.TOP:
-                arrowLeft += width / 2 - arrowWidth / 2;
-                arrowTop += balloonHeight;
-                break;
-
-            case Gravity.BOTTOM:
-                arrowLeft += width / 2 - arrowWidth / 2;
-                balloonTop += arrowHeight;
-                break;
+        // Lay out the views.
+        int arrowLeft = mArrowLeft;
+        int arrowTop = mArrowTop;
+        int balloonLeft = mBalloonLeft;
+        int balloonTop = mBalloonTop;
+        mArrowView.layout(arrowLeft, arrowTop, arrowLeft + arrowWidth, arrowTop + arrowHeight);
+        mBalloonView.layout(balloonLeft, balloonTop, balloonLeft + balloonWidth, balloonTop + balloonHeight);
 
-            case Gravity.LEFT:
-                arrowLeft += balloonWidth;
-                arrowTop += height / 2 - arrowHeight / 2;
-                break;
+        if(mTouchableRegion != null) {
+            mTouchableRegion.set(arrowLeft, arrowTop, arrowLeft + arrowWidth, arrowTop + arrowHeight);
+            mTouchableRegion.add(balloonLeft, balloonTop, balloonLeft + balloonWidth, balloonTop + balloonHeight);
+        }
 
-            case Gravity.RIGHT:
-                arrowTop += height / 2 - arrowHeight / 2;
-                balloonLeft += arrowWidth;
-                break;
+        getLocationOnScreen(mLayoutPosition);
+        int balloonX = mLayoutPosition[0] + balloonLeft;
+        int balloonY = mLayoutPosition[1] + balloonTop;
+        if(mPendingShowAnimation) {
+            mPendingShowAnimation = false;
+            animateShow(arrowLeft, arrowTop, arrowWidth, arrowHeight);
         }
+        else if(mLaidOutGravity != 0 && mLaidOutGravity != mGravity) {
+            // Slide the balloon from where it was on the other side.
+            mAnimator.animateMove(mLaidOutBalloonX - balloonX, mLaidOutBalloonY - balloonY);
+        }
+        mLaidOutGravity = mGravity;
+        mLaidOutBalloonX = balloonX;
+        mLaidOutBalloonY = balloonY;
+    }
 
-        // Don't let the balloon be out of the screen when there's no need.
+    /**
+     * Animates the laid out views in from the arrow's tip.
+     */
+    private void animateShow(int arrowLeft, int arrowTop, int arrowWidth, int arrowHeight) {
         switch(mGravity) {
             case Gravity.TOP:
+                mAnimator.animateShow(arrowLeft + arrowWidth / 2f, arrowTop + arrowHeight);
+                break;
+
             case Gravity.BOTTOM:
-                if(balloonLeft < 0)
-                    balloonLeft = Math.min(0, balloonLeft + (balloonWidth / 2 - arrowWidth + getRoundedCornersRadii()));
-                else if(mWindowPosition.x > mDisplaySize.x - balloonWidth)
-                    balloonLeft = Math.max(0, (mWindowPosition.x - (balloonWidth / 2 - arrowWidth + getRoundedCornersRadii())) - (mDisplaySize.x - balloonWidth));
+                mAnimator.animateShow(arrowLeft + arrowWidth / 2f, arrowTop);
                 break;
 
             case Gravity.LEFT:
+                mAnimator.animateShow(arrowLeft + arrowWidth, arrowTop + arrowHeight / 2f);
+                break;
+
             case Gravity.RIGHT:
-                if(balloonTop < 0)
-                    balloonTop = Math.min(0, balloonTop + (balloonHeight / 2 - arrowHeight + getRoundedCornersRadii()));
-                else if(mWindowPosition.y > mDisplaySize.y - balloonHeight)
-                    balloonTop = Math.max(0, (mWindowPosition.y - (balloonHeight / 2 - arrowHeight + getRoundedCornersRadii())) - (mDisplaySize.y - balloonHeight));
+                mAnimator.animateShow(arrowLeft, arrowTop + arrowHeight / 2f);
                 break;
         }
-
-        // Lay out the views.
-        mArrowView.layout(arrowLeft, arrowTop, arrowLeft + arrowWidth, arrowTop + arrowHeight);
-        mBalloonView.layout(balloonLeft, balloonTop, balloonLeft + balloonWidth, balloonTop + balloonHeight);
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        // Hosted tooltips let the host route the event, which already has the right coordinates.
+        if(mMode != MODE_WINDOW)
+            return false;
+
+        // Touches outside the arrow and balloon already went to the activity, unless the platform couldn't limit the
+        // window's touchable part, in which case they're dropped.
+        if(mInputMode == INPUT_TOUCHABLE_REGION) {
+            if(event.getAction() == MotionEvent.ACTION_OUTSIDE && mDismissOnOutsideTouch)
+                dismiss();
+            return false;
+        }
+
         // The OnClickListener is set on the child views, so all touch events that reach this view should be sent to the
-        // underlying activity. Before we do that, we need to adjust the coordinates.
-        event.offsetLocation(trim(mWindowPosition.x, 0, mDisplaySize.x), trim(mWindowPosition.y, 0, mDisplaySize.y));
+        // underlying activity. Before we do that, we need to adjust the coordinates to where the window really is.
+        int windowX = trim(mWindowPosition.x, mClampBounds.left, mClampBounds.right - getWidth());
+        int windowY = trim(mWindowPosition.y, mClampBounds.top, mClampBounds.bottom - getHeight());
+        event.offsetLocation(windowX, windowY);
         mActivity.dispatchTouchEvent(event);
         return false;
     }
 
-    private void ensureChildrenMeasured() {
-        int arrowWidth = mArrowView.getMeasuredWidth();
-        int arrowHeight = mArrowView.getMeasuredHeight();
+    /**
+     * Measures the children again if their content, the gravity or the display size changed since the last time.
+     *
+     * @return true if any child's size changed
+     */
+    private boolean ensureChildrenMeasured() {
+        boolean displayChanged = mDisplaySize.x != mMeasuredDisplayWidth || mDisplaySize.y != mMeasuredDisplayHeight;
+        boolean contentDirty = mContentDirty;
+        boolean gravityDirty = mGravityDirty;
+        mContentDirty = mGravityDirty = false;
+        mMeasuredDisplayWidth = mDisplaySize.x;
+        mMeasuredDisplayHeight = mDisplaySize.y;
 
-        if(arrowWidth == 0 || arrowHeight == 0) {
-            int arrowWidthMeasureSpec = MeasureSpec.makeMeasureSpec(mDisplaySize.x, MeasureSpec.AT_MOST);
-            int arrowHeightMeasureSpec = MeasureSpec.makeMeasureSpec(mDisplaySize.y, MeasureSpec.AT_MOST);
-            measureChild(mArrowView, arrowWidthMeasureSpec, arrowHeightMeasureSpec);
-        }
+        if(!displayChanged && !contentDirty && !gravityDirty)
+            return false;
 
+        int arrowWidth = mArrowView.getMeasuredWidth();
+        int arrowHeight = mArrowView.getMeasuredHeight();
         int balloonWidth = mBalloonView.getMeasuredWidth();
         int balloonHeight = mBalloonView.getMeasuredHeight();
 
-        if(balloonWidth == 0 || balloonHeight == 0) {
-            int balloonWidthMeasureSpec = MeasureSpec.makeMeasureSpec(mDisplaySize.x - arrowWidth, MeasureSpec.AT_MOST);
-            int balloonHeightMeasureSpec = MeasureSpec.makeMeasureSpec(mDisplaySize.y - arrowHeight, MeasureSpec.AT_MOST);
+        // The arrow's size depends on the gravity and style, not on the measure specs, so skip the measure cache.
+        mArrowView.forceLayout();
+        measureArrow();
+
+        if(displayChanged || contentDirty) {
+            // Leave room for the arrow whatever its orientation, so the balloon's size doesn't depend on the gravity.
+            int balloonWidthMeasureSpec = MeasureSpec.makeMeasureSpec(getBalloonMaxWidth(), MeasureSpec.AT_MOST);
+            int balloonHeightMeasureSpec =
+                    MeasureSpec.makeMeasureSpec(Math.max(0, mDisplaySize.y - getArrowSideSize() * 2), MeasureSpec.AT_MOST);
             measureChild(mBalloonView, balloonWidthMeasureSpec, balloonHeightMeasureSpec);
         }
+
+        return arrowWidth != mArrowView.getMeasuredWidth() || arrowHeight != mArrowView.getMeasuredHeight()
+                || balloonWidth != mBalloonView.getMeasuredWidth() || balloonHeight != mBalloonView.getMeasuredHeight();
+    }
+
+    private int getBalloonMaxWidth() {
+        return Math.max(0, mDisplaySize.x - getArrowSideSize() * 2);
+    }
+
+    private int getBalloonMaxTextWidth() {
+        return Math.max(0, getBalloonMaxWidth() - getPaddingHorizontal() * 2);
+    }
+
+    private void measureArrow() {
+        int arrowWidthMeasureSpec = MeasureSpec.makeMeasureSpec(mDisplaySize.x, MeasureSpec.AT_MOST);
+        int arrowHeightMeasureSpec = MeasureSpec.makeMeasureSpec(mDisplaySize.y, MeasureSpec.AT_MOST);
+        measureChild(mArrowView, arrowWidthMeasureSpec, arrowHeightMeasureSpec);
     }
 
-    // TODO: Cache these values.
     private int getArrowSideSize() {
-        int px = dpToPx(ARROW_SIDE_SIZE_DP);
-        return (px & 1) == 0 ? px : px -1; // Ensure it's even.
+        return mMetrics.arrowSideSize;
     }
 
     private int getRoundedCornersRadii() {
-        return dpToPx(ROUNDED_CORNERS_RADII_DP);
+        return mMetrics.roundedCornersRadii;
     }
 
     private int getPaddingVertical() {
-        return dpToPx(PADDING_VERTICAL_DP);
+        return mMetrics.paddingVertical;
     }
 
     private int getPaddingHorizontal() {
-        return dpToPx(PADDING_HORIZONTAL_DP);
+        return mMetrics.paddingHorizontal;
     }
 
-    private int getTargetVisibleCenterX() {
-        return (trim(mTarget.right, 0, mDisplaySize.x) + trim(mTarget.left, 0, mDisplaySize.x)) >> 1;
-    }
+    private void calculateDisplaySize() {
+        if(mDisplayGeometry == null)
+            mDisplayGeometry = DisplayGeometry.get(mActivity);
+
+        mDisplayBounds.set(
+                mDisplayGeometry.getLeft(), mDisplayGeometry.getTop(),
+                mDisplayGeometry.getRight(), mDisplayGeometry.getBottom());
+
+        // The overlay host fills the content view and keeps tooltips inside it, so they can't go over the action bar
+        // either. Otherwise, the window manager keeps windows, including the host's, inside the activity's window.
+        if(mMode == MODE_OVERLAY) {
+            mDisplayGeometry.getContentBounds(mClampBounds);
+            if(!mDisplayBounds.intersect(mClampBounds))
+                mDisplayBounds.set(mClampBounds);
+        }
+        else {
+            mClampBounds.set(0, 0, mDisplayGeometry.getWindowWidth(), mDisplayGeometry.getWindowHeight());
+        }
 
-    private int getTargetVisibleCenterY() {
-        return (trim(mTarget.bottom, 0, mDisplaySize.y) + trim(mTarget.top, 0, mDisplaySize.y)) >> 1;
+        mDisplaySize.x = mDisplayBounds.width();
+        mDisplaySize.y = mDisplayBounds.height();
     }
 
-    private int getTargetVisibleWidth() {
-        return trim(mTarget.right, 0, mDisplaySize.x) - trim(mTarget.left, 0, mDisplaySize.x);
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        // Let touches beside the arrow through to the activity's window.
+        if(mMode == MODE_WINDOW && mInputMode == INPUT_TOUCHABLE_REGION) {
+            if(mTouchableRegion == null)
+                mTouchableRegion = TouchableRegion.create();
+            if(mTouchableRegion != null)
+                mTouchableRegion.attach(getViewTreeObserver());
+        }
     }
 
-    private int getTargetVisibleHeight() {
-        return trim(mTarget.bottom, 0, mDisplaySize.y) - trim(mTarget.top, 0, mDisplaySize.y);
-    }
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
 
-    private int dpToPx(int dpValue) {
-        return (int)TypedValue.applyDimension(
-                TypedValue.COMPLEX_UNIT_DIP, dpValue, mActivity.getResources().getDisplayMetrics());
+        if(mTouchableRegion != null)
+            mTouchableRegion.detach();
     }
 
-    @SuppressLint("NewApi")
-    @SuppressWarnings("deprecation")
-    private void calculateDisplaySize() {
-        View decorView = mActivity.getWindow().getDecorView();
-        int[] position = new int[2];
-        decorView.getLocationOnScreen(position);
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
 
-        mDisplaySize.x = decorView.getWidth() - position[0];
-        mDisplaySize.y = decorView.getHeight() - position[1];
+        // Don't wait for the activity's window to be laid out again.
+        if(mDisplayGeometry != null)
+            mDisplayGeometry.invalidate();
     }
 
     private void locateTargetByView(View view) {
-        int[] position = new int[2];
-        view.getLocationInWindow(position);
+        view.getLocationInWindow(mTargetPosition);
 
-        mTarget = new Rect();
-        mTarget.left = position[0];
-        mTarget.top = position[1];
+        mTarget.left = mTargetPosition[0];
+        mTarget.top = mTargetPosition[1];
         mTarget.right = mTarget.left + view.getWidth();
         mTarget.bottom = mTarget.top + view.getHeight();
     }
@@ -653,18 +1431,68 @@ public class Tooltip extends ViewGroup {
         public void onDismiss(Tooltip tooltip);
     }
 
-    private class BalloonView extends TextView {
+    /**
+     * Draws the text's layout from {@link TextLayoutCache}, so re-showing the same text doesn't measure it again, and
+     * {@link #showAsync()} can have it measured off the main thread.
+     */
+    private class BalloonView extends View {
+        private ColoredRoundRectShape mShape;
+        private TooltipStyle.Metrics mAppliedMetrics;
+        private Layout mLayout;
+
         private BalloonView(Context context) {
             super(context);
 
-            setText(mText);
-            setTextColor(mTextColor);
-            setTextSize(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP);
-            setTypeface(null, Typeface.BOLD);
-            setSingleLine(false);
-            setGravity(Gravity.CENTER);
-            setPadding(getPaddingHorizontal(), getPaddingVertical(), getPaddingHorizontal(), getPaddingVertical());
-            setBackground(new ShapeDrawable(new ColoredRoundRectShape(getRoundedCornersRadii())));
+            bind();
+        }
+
+        private void bind() {
+            if(mAppliedMetrics != mMetrics) {
+                setPadding(getPaddingHorizontal(), getPaddingVertical(), getPaddingHorizontal(), getPaddingVertical());
+                mShape = new ColoredRoundRectShape(getRoundedCornersRadii());
+                setBackground(new ShapeDrawable(mShape));
+                mAppliedMetrics = mMetrics;
+            }
+
+            // The text may have changed, so get its layout again on the next measure. Accessibility services can't
+            // read text drawn straight from a layout, so also describe the view with it.
+            mLayout = null;
+            setContentDescription(mText);
+            requestLayout();
+            bindColor();
+        }
+
+        private void bindColor() {
+            mShape.mPaint.setColor(mColor);
+            invalidate();
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            int paddingWidth = getPaddingLeft() + getPaddingRight();
+            int paddingHeight = getPaddingTop() + getPaddingBottom();
+
+            int maxTextWidth = MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED ?
+                    Integer.MAX_VALUE : Math.max(0, MeasureSpec.getSize(widthMeasureSpec) - paddingWidth);
+            mLayout = TextLayoutCache.get(mText, mMetrics.textSize, maxTextWidth);
+
+            setMeasuredDimension(
+                    resolveSize(mLayout.getWidth() + paddingWidth, widthMeasureSpec),
+                    resolveSize(mLayout.getHeight() + paddingHeight, heightMeasureSpec));
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            if(mLayout == null)
+                return;
+
+            // Layouts are shared, so their paint only gets this tooltip's color right before drawing.
+            mLayout.getPaint().setColor(mTextColor);
+
+            canvas.save();
+            canvas.translate(getPaddingLeft(), getPaddingTop());
+            mLayout.draw(canvas);
+            canvas.restore();
         }
 
         @SuppressWarnings("deprecation")
@@ -685,7 +1513,6 @@ public class Tooltip extends ViewGroup {
 
                 mPaint = new Paint();
                 mPaint.setAntiAlias(true);
-                mPaint.setColor(mColor);
             }
 
             @Override
@@ -696,34 +1523,13 @@ public class Tooltip extends ViewGroup {
     }
 
     private class ArrowView extends View {
-        private Paint mPaint;
-        private Path mPath;
-
         public ArrowView(Context context) {
             super(context);
         }
 
-        private void ensurePaint() {
-            if(mPaint == null) {
-                mPaint = new Paint();
-                mPaint.setStyle(Paint.Style.FILL);
-                mPaint.setAntiAlias(true);
-                mPaint.setColor(mColor);
-            }
-        }
-
-        private void ensurePath() {
-            if(mPath == null) {
-                mPath = new Path();
-                mPath.setFillType(Path.FillType.EVEN_ODD);
-
-                int otherSideSize = getOtherSideSize();
-                mPath.moveTo(0, 0);
-                mPath.lineTo(otherSideSize / 2, getArrowSideSize());
-                mPath.lineTo(otherSideSize, 0);
-
-                mPath.close();
-            }
+        private void bind() {
+            // The color, size or gravity may have changed.
+            invalidate();
         }
 
         private int getOtherSideSize() {
@@ -751,28 +1557,146 @@ public class Tooltip extends ViewGroup {
 
         @Override
         protected void onDraw(Canvas canvas) {
-            ensurePaint();
-            ensurePath();
+            // The path is already rotated for the gravity.
+            canvas.drawPath(ArrowCache.getPath(getArrowSideSize(), mGravity), ArrowCache.getPaint(mColor));
+        }
+    }
 
-            int count = canvas.save();
-            switch(mGravity) {
-                case Gravity.BOTTOM:
-                    canvas.rotate(180, getOtherSideSize() / 2, getArrowSideSize() / 2);
+    /**
+     * A show started by {@link #showAsync()}, until the tooltip is shown or the show is cancelled.
+     */
+    public class PendingShow {
+        private static final int STEP_PREPARE = 0;
+        private static final int STEP_RESOLVE_TARGET = 1;
+        private static final int STEP_MEASURE = 2;
+        private static final int STEP_PLACE = 3;
+        private static final int STEP_ATTACH = 4;
+        private static final int STEP_DONE = 5;
+
+        private int mStep = STEP_PREPARE;
+        private boolean mCancelled = false;
+        // Whether the steps are running, or waiting for the target or text.
+        private boolean mRunning = false;
+        private boolean mWaiting = false;
+        private boolean mTextReady = false;
+        private boolean mTargetVisible;
+
+        private final Runnable mRunStepsRunnable = new Runnable() {
+            @Override
+            public void run() {
+                runSteps();
+            }
+        };
+
+        private PendingShow() {
+        }
+
+        /**
+         * Cancel the remaining steps. Does nothing once the tooltip is shown; use {@link Tooltip#dismiss()} then.
+         */
+        public void cancel() {
+            if(mStep == STEP_DONE)
+                return;
+
+            mCancelled = true;
+            mHandler.removeCallbacks(mRunStepsRunnable);
+            if(mPendingShow == this)
+                mPendingShow = null;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Whether the tooltip was shown.
+         */
+        public boolean isDone() {
+            return mStep == STEP_DONE;
+        }
+
+        private void runSteps() {
+            long start = SystemClock.uptimeMillis();
+
+            mRunning = true;
+            while(!mCancelled && !mWaiting && mStep != STEP_DONE) {
+                runStep();
+
+                if(!mCancelled && !mWaiting && mStep != STEP_DONE
+                        && SystemClock.uptimeMillis() - start >= SHOW_FRAME_BUDGET_MS) {
+                    // Out of time for this frame, continue after it.
+                    mHandler.post(mRunStepsRunnable);
                     break;
+                }
+            }
+            mRunning = false;
+        }
 
-                case Gravity.LEFT:
-                    canvas.rotate(-90, getOtherSideSize() / 2, getOtherSideSize() / 2);
+        private void runStep() {
+            switch(mStep) {
+                case STEP_PREPARE:
+                    prepareViews();
+                    calculateDisplaySize();
+
+                    // Measure the text in the background while the target is resolved.
+                    mStep = STEP_RESOLVE_TARGET;
+                    TextLayoutCache.prefetch(mText, mMetrics.textSize, getBalloonMaxTextWidth(), new Runnable() {
+                        @Override
+                        public void run() {
+                            mTextReady = true;
+                            if(mStep == STEP_MEASURE)
+                                resume();
+                        }
+                    });
                     break;
 
-                case Gravity.RIGHT:
-                    canvas.rotate(90, getArrowSideSize() / 2, getArrowSideSize() / 2);
+                case STEP_RESOLVE_TARGET:
+                    mWaiting = true;
+                    locateTarget(new OnTargetExtractedListener() {
+                        @Override
+                        public void onTargetExtracted(boolean immediate, boolean visible, boolean changed) {
+                            if(mCancelled)
+                                return;
+
+                            mTargetVisible = visible;
+                            mStep = STEP_MEASURE;
+                            resume();
+                        }
+                    });
                     break;
 
-                default:
+                case STEP_MEASURE:
+                    if(!mTextReady) {
+                        mWaiting = true;
+                        break;
+                    }
+
+                    calculateDisplaySize();
+                    ensureChildrenMeasured();
+                    mStep = STEP_PLACE;
+                    break;
+
+                case STEP_PLACE:
+                    calculateWindowPosition(false);
+                    mStep = STEP_ATTACH;
+                    break;
+
+                case STEP_ATTACH:
+                    mStep = STEP_DONE;
+                    mPendingShow = null;
+                    attachShown(mTargetVisible);
                     break;
             }
-            canvas.drawPath(mPath, mPaint);
-            canvas.restoreToCount(count);
+        }
+
+        private void resume() {
+            if(mCancelled)
+                return;
+
+            mWaiting = false;
+            // When called back from within a step, the loop just carries on.
+            if(!mRunning)
+                mHandler.post(mRunStepsRunnable);
         }
     }
 
@@ -785,11 +1709,128 @@ public class Tooltip extends ViewGroup {
         void onTargetExtracted(boolean immediate, boolean visible, boolean changed);
     }
 
-    private class UpdateWindowListener implements ViewTreeObserver.OnPreDrawListener {
+    private class UpdateWindowTargetListener implements OnTargetExtractedListener {
+        @Override
+        public void onTargetExtracted(boolean immediate, boolean visible, boolean changed) {
+            // A predicted position must be settled even if the target didn't move since.
+            boolean predicting = mPositionPredictor != null && mPositionPredictor.isPredicting();
+            if((changed || predicting) && mIsShown && !mIsDismissed) {
+                int predictedOffsetX = 0, predictedOffsetY = 0;
+                if(mPositionPredictor != null) {
+                    mHandler.removeCallbacks(mPredictionSettleRunnable);
+                    if(visible) {
+                        mPositionPredictor.addSample(System.nanoTime(), mTarget.left, mTarget.top);
+                        predictedOffsetX = mPositionPredictor.getPredictedX() - mTarget.left;
+                        predictedOffsetY = mPositionPredictor.getPredictedY() - mTarget.top;
+                        if(mPositionPredictor.isPredicting())
+                            mHandler.postDelayed(mPredictionSettleRunnable, PREDICTION_SETTLE_DELAY_MS);
+                    }
+                    else {
+                        mPositionPredictor.reset();
+                    }
+                }
+
+                // Place the tooltip where the target is expected on the next frame, but keep its actual location.
+                mTarget.offset(predictedOffsetX, predictedOffsetY);
+                calculateWindowPosition(true);
+                mTarget.offset(-predictedOffsetX, -predictedOffsetY);
+
+                if(mVisible && !visible) {
+                    mWindowLayoutParams.windowAnimations = R.style.TooltipAnimation;
+                    setVisibility(View.GONE);
+                    mVisible = false;
+
+                    if(mHiddenDetachDelay >= 0)
+                        mHandler.postDelayed(mHiddenDetachRunnable, mHiddenDetachDelay);
+                }
+                else if(!mVisible && visible && !mIsAttached) {
+                    mHandler.removeCallbacks(mHiddenDetachRunnable);
+
+                    // Attach now that there's something to show.
+                    mWindowLayoutParams.x = mWindowPosition.x;
+                    mWindowLayoutParams.y = mWindowPosition.y;
+                    mWindowLayoutParams.windowAnimations = R.style.TooltipAnimation;
+                    setVisibility(View.VISIBLE);
+                    mVisible = true;
+                    attach();
+
+                    mAppliedWindowX = mWindowLayoutParams.x;
+                    mAppliedWindowY = mWindowLayoutParams.y;
+                    mAppliedVisible = mVisible;
+                }
+                else if(!mVisible && visible) {
+                    mHandler.removeCallbacks(mHiddenDetachRunnable);
+
+                    // Animate in once laid out again. The window only has an exit animation, as an enter animation
+                    // would delay onLayout() until it ends.
+                    mPendingShowAnimation = true;
+                    setVisibility(View.VISIBLE);
+                    mVisible = true;
+                }
+                updateObstacles();
+
+                mWindowLayoutParams.x = mWindowPosition.x;
+                mWindowLayoutParams.y = mWindowPosition.y;
+
+                // Coalesce with the other tooltips' updates, and skip it if nothing actually changed.
+                // Hosted tooltips are only translated, which is cheap enough to apply right away. In overlay mode that
+                // also keeps the update in the same traversal as the target.
+                if(mIsAttached && (mWindowLayoutParams.x != mAppliedWindowX || mWindowLayoutParams.y != mAppliedWindowY
+                        || mVisible != mAppliedVisible)) {
+                    if(mMode != MODE_WINDOW)
+                        applyWindowUpdate();
+                    else
+                        TooltipFrameScheduler.getInstance().schedule(Tooltip.this);
+                }
+            }
+        }
+    }
+
+    private class UpdateWindowListener implements ViewTreeObserver.OnPreDrawListener,
+            ViewTreeObserver.OnScrollChangedListener, ViewTreeObserver.OnGlobalLayoutListener,
+            TargetProvider.OnTargetMovedListener {
         @Override
         public boolean onPreDraw() {
             updateWindow();
             return true;
         }
+
+        @Override
+        public void onScrollChanged() {
+            updateWindow();
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            updateWindow();
+        }
+
+        @Override
+        public void onTargetMoved() {
+            updateWindow();
+        }
+    }
+
+    private class TargetListDataObserver extends DataSetObserver {
+        @Override
+        public void onChanged() {
+            // Eg. reordered items, which may move the targeted id into view while the counts stay the same.
+            mTargetListDormant = false;
+        }
+
+        @Override
+        public void onInvalidated() {
+            mTargetListDormant = false;
+        }
+    }
+
+    private class ShownChangeListener implements ViewTreeObserver.OnPreDrawListener {
+        @Override
+        public boolean onPreDraw() {
+            // Hiding the target or one of its parents only redraws, which neither scrolls nor lays anything out.
+            if(mVisibilityTracker.hasShownChanged())
+                updateWindow();
+            return true;
+        }
     }
 }
@@ -0,0 +1,189 @@
+package com.heavyplayer.tooltip;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.View;
+import android.view.animation.AlphaAnimation;
+import android.view.animation.Animation;
+import android.view.animation.DecelerateInterpolator;
+
+/**
+ * Runs a tooltip's animations on its arrow and balloon views: fading and scaling in from the arrow's tip when shown,
+ * and sliding the balloon when it moves to another side of the target.
+ *
+ * Animations are created once and reused, so starting or cancelling them allocates and parses nothing. The views are
+ * rendered into hardware layers while animating, so each frame only composites them. Before Honeycomb, only the fade
+ * is run, with a reused view animation.
+ */
+abstract class TooltipAnimator {
+    private static final long DURATION = 180;
+
+    protected final View mArrowView;
+    protected final View mBalloonView;
+
+    static TooltipAnimator create(View arrowView, View balloonView) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+            return new PropertyTooltipAnimator(arrowView, balloonView);
+        else
+            return new LegacyTooltipAnimator(arrowView, balloonView);
+    }
+
+    protected TooltipAnimator(View arrowView, View balloonView) {
+        mArrowView = arrowView;
+        mBalloonView = balloonView;
+    }
+
+    /**
+     * Show the laid out views, growing them from the arrow's tip.
+     *
+     * @param tipX the X coordinate of the arrow's tip, in the tooltip's coordinates
+     * @param tipY the Y coordinate of the arrow's tip, in the tooltip's coordinates
+     */
+    abstract void animateShow(float tipX, float tipY);
+
+    /**
+     * Slide the laid out balloon from its previous position, and fade in the arrow on its new side.
+     *
+     * @param fromX the balloon's previous horizontal offset from its new position
+     * @param fromY the balloon's previous vertical offset from its new position
+     */
+    abstract void animateMove(float fromX, float fromY);
+
+    /**
+     * Stop any animation, leaving the views in their final state.
+     */
+    abstract void cancel();
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static class PropertyTooltipAnimator extends TooltipAnimator
+            implements ValueAnimator.AnimatorUpdateListener {
+        private static final float SHOW_FROM_SCALE = 0.6f;
+
+        private final ValueAnimator mShowAnimator;
+        private final ValueAnimator mMoveAnimator;
+        private float mMoveFromX, mMoveFromY;
+
+        private PropertyTooltipAnimator(View arrowView, View balloonView) {
+            super(arrowView, balloonView);
+
+            AnimatorListenerAdapter layerListener = new AnimatorListenerAdapter() {
+                @Override
+                public void onAnimationStart(Animator animation) {
+                    setLayers(View.LAYER_TYPE_HARDWARE);
+                }
+
+                @Override
+                public void onAnimationEnd(Animator animation) {
+                    setLayers(View.LAYER_TYPE_NONE);
+                }
+            };
+
+            mShowAnimator = ValueAnimator.ofFloat(0f, 1f);
+            mShowAnimator.setDuration(DURATION);
+            mShowAnimator.setInterpolator(new DecelerateInterpolator());
+            mShowAnimator.addUpdateListener(this);
+            mShowAnimator.addListener(layerListener);
+
+            mMoveAnimator = ValueAnimator.ofFloat(0f, 1f);
+            mMoveAnimator.setDuration(DURATION);
+            mMoveAnimator.setInterpolator(new DecelerateInterpolator());
+            mMoveAnimator.addUpdateListener(this);
+            mMoveAnimator.addListener(layerListener);
+        }
+
+        @Override
+        void animateShow(float tipX, float tipY) {
+            cancel();
+
+            mArrowView.setPivotX(tipX - mArrowView.getLeft());
+            mArrowView.setPivotY(tipY - mArrowView.getTop());
+            mBalloonView.setPivotX(tipX - mBalloonView.getLeft());
+            mBalloonView.setPivotY(tipY - mBalloonView.getTop());
+            applyShow(0f);
+            mShowAnimator.start();
+        }
+
+        @Override
+        void animateMove(float fromX, float fromY) {
+            // A move during the show animation would fight it, and the tooltip isn't settled yet anyway.
+            if(mShowAnimator.isRunning())
+                return;
+
+            mMoveAnimator.cancel();
+            mMoveFromX = fromX;
+            mMoveFromY = fromY;
+            applyMove(0f);
+            mMoveAnimator.start();
+        }
+
+        @Override
+        void cancel() {
+            // Cancelling ends the animators, so also apply their final state.
+            mShowAnimator.cancel();
+            mMoveAnimator.cancel();
+            applyShow(1f);
+            applyMove(1f);
+        }
+
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            if(animation == mShowAnimator)
+                applyShow(animation.getAnimatedFraction());
+            else
+                applyMove(animation.getAnimatedFraction());
+        }
+
+        private void applyShow(float fraction) {
+            float scale = SHOW_FROM_SCALE + (1f - SHOW_FROM_SCALE) * fraction;
+            mArrowView.setAlpha(fraction);
+            mBalloonView.setAlpha(fraction);
+            mArrowView.setScaleX(scale);
+            mArrowView.setScaleY(scale);
+            mBalloonView.setScaleX(scale);
+            mBalloonView.setScaleY(scale);
+        }
+
+        private void applyMove(float fraction) {
+            mBalloonView.setTranslationX(mMoveFromX * (1f - fraction));
+            mBalloonView.setTranslationY(mMoveFromY * (1f - fraction));
+            mArrowView.setAlpha(fraction);
+        }
+
+        private void setLayers(int layerType) {
+            mArrowView.setLayerType(layerType, null);
+            mBalloonView.setLayerType(layerType, null);
+        }
+    }
+
+    private static class LegacyTooltipAnimator extends TooltipAnimator {
+        private final Animation mFadeIn;
+
+        private LegacyTooltipAnimator(View arrowView, View balloonView) {
+            super(arrowView, balloonView);
+
+            mFadeIn = new AlphaAnimation(0f, 1f);
+            mFadeIn.setDuration(DURATION);
+            mFadeIn.setInterpolator(new DecelerateInterpolator());
+        }
+
+        @Override
+        void animateShow(float tipX, float tipY) {
+            mArrowView.startAnimation(mFadeIn);
+            mBalloonView.startAnimation(mFadeIn);
+        }
+
+        @Override
+        void animateMove(float fromX, float fromY) {
+            mArrowView.startAnimation(mFadeIn);
+        }
+
+        @Override
+        void cancel() {
+            mArrowView.clearAnimation();
+            mBalloonView.clearAnimation();
+        }
+    }
+}
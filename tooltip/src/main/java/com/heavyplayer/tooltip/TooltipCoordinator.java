@@ -0,0 +1,46 @@
+package com.heavyplayer.tooltip;
+
+import android.app.Activity;
+import android.util.TypedValue;
+import android.view.View;
+
+import com.heavyplayer.tooltip.core.SpatialGrid;
+
+/**
+ * Keeps track of the bounds of all visible tooltips of an activity, and of their targets, so each tooltip can be
+ * placed where it doesn't cover the others.
+ */
+final class TooltipCoordinator {
+    private static final int CELL_SIZE_DP = 64;
+
+    private final SpatialGrid mGrid;
+    private int mNextOwner = 1;
+
+    static TooltipCoordinator get(Activity activity) {
+        // Keep the coordinator on the decor view, so it goes away with the activity.
+        View decorView = activity.getWindow().getDecorView();
+        TooltipCoordinator coordinator = (TooltipCoordinator)decorView.getTag(R.id.tooltip_coordinator);
+        if(coordinator == null) {
+            coordinator = new TooltipCoordinator(activity);
+            decorView.setTag(R.id.tooltip_coordinator, coordinator);
+        }
+        return coordinator;
+    }
+
+    private TooltipCoordinator(Activity activity) {
+        int cellSize = (int)TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_DIP, CELL_SIZE_DP, activity.getResources().getDisplayMetrics());
+        mGrid = new SpatialGrid(Math.max(1, cellSize));
+    }
+
+    /**
+     * Get a new owner, under which a tooltip adds its entries.
+     */
+    int obtainOwner() {
+        return mNextOwner++;
+    }
+
+    SpatialGrid getGrid() {
+        return mGrid;
+    }
+}
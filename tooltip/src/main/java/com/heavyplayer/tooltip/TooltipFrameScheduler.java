@@ -0,0 +1,85 @@
+package com.heavyplayer.tooltip;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+
+/**
+ * Coalesces the window updates of all visible tooltips into a single pass per frame.
+ *
+ * Tooltips mark themselves dirty while tracking their targets, usually during the activity's traversal, and the
+ * scheduler applies all pending updates once, right after that traversal. The pass is posted at the front of the main
+ * thread's queue rather than to the next vsync, so the windows move in the same frame as their targets instead of one
+ * frame behind. Must only be used from the main thread.
+ */
+final class TooltipFrameScheduler {
+    private static TooltipFrameScheduler sInstance;
+
+    private ArrayList<Tooltip> mDirty = new ArrayList<Tooltip>();
+    private ArrayList<Tooltip> mApplying = new ArrayList<Tooltip>();
+    private boolean mScheduled = false;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            doFrame();
+        }
+    };
+
+    static TooltipFrameScheduler getInstance() {
+        if(sInstance == null)
+            sInstance = new TooltipFrameScheduler();
+        return sInstance;
+    }
+
+    private TooltipFrameScheduler() {
+    }
+
+    /**
+     * Schedule the tooltip's window update for right after the current traversal. Scheduling the same tooltip twice is
+     * a no-op.
+     */
+    void schedule(Tooltip tooltip) {
+        // A flag on the tooltip rather than a lookup in the list, so scheduling N tooltips costs O(N).
+        if(!tooltip.mWindowUpdateScheduled) {
+            tooltip.mWindowUpdateScheduled = true;
+            mDirty.add(tooltip);
+        }
+
+        if(!mScheduled) {
+            mScheduled = true;
+            // Runs as soon as the current message, which is usually the traversal, returns.
+            mHandler.postAtFrontOfQueue(mFrameRunnable);
+        }
+    }
+
+    /**
+     * Drop any pending window update for the tooltip, eg. when it's dismissed.
+     */
+    void cancel(Tooltip tooltip) {
+        // It's left in the list, and skipped by the pass.
+        tooltip.mWindowUpdateScheduled = false;
+    }
+
+    private void doFrame() {
+        mScheduled = false;
+
+        // Swap the lists so tooltips can be scheduled again while we apply the current batch.
+        ArrayList<Tooltip> applying = mDirty;
+        mDirty = mApplying;
+        mApplying = applying;
+
+        for(int i = 0, size = applying.size(); i < size; i++) {
+            Tooltip tooltip = applying.get(i);
+            // Cancelled, or already applied when scheduled again after a cancel.
+            if(!tooltip.mWindowUpdateScheduled)
+                continue;
+
+            tooltip.mWindowUpdateScheduled = false;
+            tooltip.applyWindowUpdate();
+        }
+        applying.clear();
+    }
+}
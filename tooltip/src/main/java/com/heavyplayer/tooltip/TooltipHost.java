@@ -0,0 +1,276 @@
+package com.heavyplayer.tooltip;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.graphics.PixelFormat;
+import android.os.Build;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.WindowManager;
+
+/**
+ * A single transparent overlay that hosts any number of tooltips as child views.
+ *
+ * Used by tooltips in {@link Tooltip#MODE_HOST}, where the host is its own window, and in
+ * {@link Tooltip#MODE_OVERLAY}, where it's injected on top of the activity's content view. The host is attached when
+ * the first tooltip is shown and detached when the last one is dismissed, and repositioning a tooltip only translates
+ * its view instead of relaying out a window.
+ *
+ * The host window covers the whole activity, but only its tooltips take touches: the window's touchable part is
+ * limited to their bounds, so everything else goes straight to the activity's window. Where the platform doesn't allow
+ * that, the host window takes every touch and sends the ones missing its tooltips to the activity again, so each touch
+ * is dispatched twice and the activity's gestures lose their timing. Prefer {@link Tooltip#MODE_OVERLAY} then.
+ */
+public class TooltipHost extends ViewGroup {
+    private Activity mActivity;
+    private WindowManager mWindowManager;
+    private WindowManager.LayoutParams mWindowLayoutParams;
+    private boolean mInWindow;
+    private boolean mIsAttached = false;
+    private TouchableRegion mTouchableRegion;
+    // Rebuilt once per traversal, when the window asks for it, however many tooltips moved.
+    private boolean mTouchableRegionDirty = true;
+    private final Runnable mUpdateTouchableRegionRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updateTouchableRegion();
+        }
+    };
+
+    // Offset of this host within the activity's window, as tooltip positions are in window coordinates.
+    private final int[] mLocationInWindow = new int[2];
+    private int mOffsetX, mOffsetY;
+
+    /**
+     * Get the host window shared by all tooltips of this activity, creating it if needed.
+     */
+    public static TooltipHost get(Activity activity) {
+        return get(activity, R.id.tooltip_host, false);
+    }
+
+    /**
+     * Get the host injected in the activity's own window, shared by all its tooltips, creating it if needed.
+     */
+    public static TooltipHost getInWindow(Activity activity) {
+        return get(activity, R.id.tooltip_host_in_window, true);
+    }
+
+    private static TooltipHost get(Activity activity, int tagKey, boolean inWindow) {
+        // Keep the host on the decor view, so it goes away with the activity.
+        View decorView = activity.getWindow().getDecorView();
+        TooltipHost host = (TooltipHost)decorView.getTag(tagKey);
+        if(host == null) {
+            host = new TooltipHost(activity, inWindow);
+            decorView.setTag(tagKey, host);
+        }
+        return host;
+    }
+
+    private TooltipHost(Activity activity, boolean inWindow) {
+        super(activity);
+
+        mActivity = activity;
+        mInWindow = inWindow;
+        mWindowManager = (WindowManager)activity.getSystemService(Activity.WINDOW_SERVICE);
+
+        mWindowLayoutParams = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.TYPE_APPLICATION_PANEL,
+                WindowManager.LayoutParams.FLAG_ALT_FOCUSABLE_IM | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE,
+                PixelFormat.TRANSLUCENT);
+        mWindowLayoutParams.gravity = Gravity.LEFT | Gravity.TOP;
+    }
+
+    void addTooltip(Tooltip tooltip, int x, int y) {
+        LayoutParams params = new LayoutParams();
+        params.x = x;
+        params.y = y;
+        addView(tooltip, params);
+        applyPosition(tooltip, params);
+
+        if(!mIsAttached) {
+            if(mInWindow) {
+                ViewGroup content = (ViewGroup)mActivity.findViewById(android.R.id.content);
+                content.addView(this, new ViewGroup.LayoutParams(MATCH_PARENT, MATCH_PARENT));
+            }
+            else {
+                mWindowManager.addView(this, mWindowLayoutParams);
+            }
+            mIsAttached = true;
+        }
+    }
+
+    void removeTooltip(Tooltip tooltip) {
+        removeView(tooltip);
+
+        if(mIsAttached && getChildCount() == 0) {
+            if(mInWindow) {
+                ViewGroup parent = (ViewGroup)getParent();
+                if(parent != null)
+                    parent.removeView(this);
+                mActivity.getWindow().getDecorView().setTag(R.id.tooltip_host_in_window, null);
+            }
+            else {
+                mWindowManager.removeView(this);
+                mActivity.getWindow().getDecorView().setTag(R.id.tooltip_host, null);
+            }
+            mIsAttached = false;
+        }
+    }
+
+    void setTooltipPosition(Tooltip tooltip, int x, int y) {
+        LayoutParams params = (LayoutParams)tooltip.getLayoutParams();
+        if(params.x != x || params.y != y) {
+            params.x = x;
+            params.y = y;
+            applyPosition(tooltip, params);
+        }
+    }
+
+    @SuppressLint("NewApi")
+    private void applyPosition(View child, LayoutParams params) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            child.setTranslationX(getChildLeft(child, params));
+            child.setTranslationY(getChildTop(child, params));
+            mTouchableRegionDirty = true;
+        }
+        else {
+            // No translation support, so fall back to laying out the child at its position.
+            requestLayout();
+        }
+    }
+
+    /**
+     * Keep tooltips inside the host, like the WindowManager does with tooltip windows, as their layout relies on it.
+     */
+    private int getChildLeft(View child, LayoutParams params) {
+        int left = params.x - mOffsetX;
+        if(getWidth() > 0)
+            left = Math.max(0, Math.min(left, getWidth() - child.getMeasuredWidth()));
+        return left;
+    }
+
+    private int getChildTop(View child, LayoutParams params) {
+        int top = params.y - mOffsetY;
+        if(getHeight() > 0)
+            top = Math.max(0, Math.min(top, getHeight() - child.getMeasuredHeight()));
+        return top;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int unspecified = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+        for(int i = 0; i < getChildCount(); i++)
+            getChildAt(i).measure(unspecified, unspecified);
+
+        setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec), MeasureSpec.getSize(heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        getLocationInWindow(mLocationInWindow);
+        mOffsetX = mLocationInWindow[0];
+        mOffsetY = mLocationInWindow[1];
+
+        boolean translated = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+        for(int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            LayoutParams params = (LayoutParams)child.getLayoutParams();
+            int left = translated ? 0 : getChildLeft(child, params);
+            int top = translated ? 0 : getChildTop(child, params);
+            child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+
+            // The offset and sizes may have changed.
+            if(translated)
+                applyPosition(child, params);
+        }
+        mTouchableRegionDirty = true;
+    }
+
+    /**
+     * Limit the window's touchable part to the shown tooltips, wherever they were moved to. Called by the window on
+     * each traversal, and only walks the tooltips when one moved or was laid out since.
+     */
+    private void updateTouchableRegion() {
+        if(mTouchableRegion == null || !mTouchableRegionDirty)
+            return;
+        mTouchableRegionDirty = false;
+
+        mTouchableRegion.set(0, 0, 0, 0);
+        for(int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if(child.getVisibility() == View.VISIBLE) {
+                LayoutParams params = (LayoutParams)child.getLayoutParams();
+                int left = getChildLeft(child, params);
+                int top = getChildTop(child, params);
+                mTouchableRegion.add(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+            }
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        // In the activity's window, touches already fall through to the content.
+        if(!mInWindow) {
+            if(mTouchableRegion == null)
+                mTouchableRegion = TouchableRegion.create();
+            if(mTouchableRegion != null) {
+                mTouchableRegion.setOnComputeListener(mUpdateTouchableRegionRunnable);
+                mTouchableRegion.attach(getViewTreeObserver());
+                mTouchableRegionDirty = true;
+            }
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        if(mTouchableRegion != null)
+            mTouchableRegion.detach();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        // Touches that miss every tooltip belong to the underlying activity.
+        if(mInWindow) {
+            // We're a sibling of the activity's content, so let the event fall through to it.
+            return false;
+        }
+        else {
+            // Only reached when the window's touchable part couldn't be limited to the tooltips. The host covers the
+            // whole activity window, so the coordinates already match. Keep the gesture so the activity receives all
+            // of it.
+            mActivity.dispatchTouchEvent(event);
+            return true;
+        }
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
+        return p instanceof LayoutParams;
+    }
+
+    @Override
+    protected ViewGroup.LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams();
+    }
+
+    @Override
+    protected ViewGroup.LayoutParams generateLayoutParams(ViewGroup.LayoutParams p) {
+        return new LayoutParams();
+    }
+
+    static class LayoutParams extends ViewGroup.LayoutParams {
+        int x, y;
+
+        LayoutParams() {
+            super(WRAP_CONTENT, WRAP_CONTENT);
+        }
+    }
+}
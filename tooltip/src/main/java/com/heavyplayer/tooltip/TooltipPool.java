@@ -0,0 +1,111 @@
+package com.heavyplayer.tooltip;
+
+import android.app.Activity;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * A per-activity pool of tooltips, so they can be shown again without re-creating their views, paints and layout
+ * params. Recycled tooltips are reset to their defaults, so the target, text, colors, listeners and any other settings
+ * (mode, tracking, input, visibility thresholds, position prediction...) need to be set again.
+ *
+ * Typical usage is to {@link #obtain()} a tooltip, set it up, and {@link #recycle(Tooltip)} it from its
+ * {@link Tooltip.OnDismissListener}. Must only be used from the main thread.
+ */
+public class TooltipPool {
+    private static final int DEFAULT_MAX_SIZE = 8;
+
+    private Activity mActivity;
+    private int mMaxSize;
+    private ArrayList<Tooltip> mPool;
+
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+
+    /**
+     * Get the pool of this activity, creating it if needed.
+     */
+    public static TooltipPool get(Activity activity) {
+        // Keep the pool on the decor view, so it goes away with the activity.
+        View decorView = activity.getWindow().getDecorView();
+        TooltipPool pool = (TooltipPool)decorView.getTag(R.id.tooltip_pool);
+        if(pool == null) {
+            pool = new TooltipPool(activity, DEFAULT_MAX_SIZE);
+            decorView.setTag(R.id.tooltip_pool, pool);
+        }
+        return pool;
+    }
+
+    private TooltipPool(Activity activity, int maxSize) {
+        mActivity = activity;
+        mMaxSize = maxSize;
+        mPool = new ArrayList<Tooltip>(maxSize);
+    }
+
+    /**
+     * Get a tooltip from the pool, or a new one if it's empty.
+     */
+    public Tooltip obtain() {
+        int size = mPool.size();
+        if(size > 0) {
+            mHitCount++;
+            return mPool.remove(size - 1);
+        }
+        else {
+            mMissCount++;
+            return new Tooltip(mActivity);
+        }
+    }
+
+    /**
+     * Return a tooltip to the pool. It's dismissed if still shown, and must not be used after this call.
+     */
+    public void recycle(Tooltip tooltip) {
+        if(tooltip.getActivity() != mActivity)
+            throw new IllegalArgumentException("The tooltip belongs to a different activity.");
+
+        tooltip.reset();
+
+        if(mPool.size() < mMaxSize && !mPool.contains(tooltip))
+            mPool.add(tooltip);
+    }
+
+    /**
+     * Set the maximum number of tooltips kept by the pool.
+     */
+    public void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        while(mPool.size() > maxSize)
+            mPool.remove(mPool.size() - 1);
+    }
+
+    /**
+     * Clear all pooled tooltips.
+     */
+    public void clear() {
+        mPool.clear();
+    }
+
+    /**
+     * Get the number of times {@link #obtain()} returned a pooled tooltip.
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Get the number of times {@link #obtain()} had to create a new tooltip.
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Get the ratio of {@link #obtain()} calls that returned a pooled tooltip, between 0 and 1.
+     */
+    public float getHitRate() {
+        int total = mHitCount + mMissCount;
+        return total > 0 ? (float)mHitCount / total : 0f;
+    }
+}
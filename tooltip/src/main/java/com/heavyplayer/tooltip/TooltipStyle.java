@@ -0,0 +1,142 @@
+package com.heavyplayer.tooltip;
+
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+
+/**
+ * The dimensions used to draw a tooltip. Styles are immutable and can be shared by any number of tooltips.
+ *
+ * Dimensions are converted to pixels once per display density and the result is shared by all tooltips using the
+ * style, so measuring and drawing only read precomputed values.
+ */
+public final class TooltipStyle {
+    public static final TooltipStyle DEFAULT = new Builder().build();
+
+    private final int mTextSizeSp;
+    private final int mArrowSideSizeDp;
+    private final int mRoundedCornersRadiiDp;
+    private final int mPaddingVerticalDp;
+    private final int mPaddingHorizontalDp;
+
+    private Metrics mMetrics;
+
+    private TooltipStyle(Builder builder) {
+        mTextSizeSp = builder.mTextSizeSp;
+        mArrowSideSizeDp = builder.mArrowSideSizeDp;
+        mRoundedCornersRadiiDp = builder.mRoundedCornersRadiiDp;
+        mPaddingVerticalDp = builder.mPaddingVerticalDp;
+        mPaddingHorizontalDp = builder.mPaddingHorizontalDp;
+    }
+
+    public int getTextSizeSp() {
+        return mTextSizeSp;
+    }
+
+    public int getArrowSideSizeDp() {
+        return mArrowSideSizeDp;
+    }
+
+    public int getRoundedCornersRadiiDp() {
+        return mRoundedCornersRadiiDp;
+    }
+
+    public int getPaddingVerticalDp() {
+        return mPaddingVerticalDp;
+    }
+
+    public int getPaddingHorizontalDp() {
+        return mPaddingHorizontalDp;
+    }
+
+    /**
+     * Get the pixel values of this style for the given display, reusing the last ones if the density didn't change.
+     */
+    Metrics resolve(DisplayMetrics displayMetrics) {
+        Metrics metrics = mMetrics;
+        if(metrics == null
+                || metrics.density != displayMetrics.density
+                || metrics.scaledDensity != displayMetrics.scaledDensity) {
+            metrics = new Metrics(this, displayMetrics);
+            mMetrics = metrics;
+        }
+        return metrics;
+    }
+
+    /**
+     * The style's dimensions, in pixels, for one display density.
+     */
+    static final class Metrics {
+        final float density;
+        final float scaledDensity;
+
+        final float textSize;
+        final int arrowSideSize;
+        final int roundedCornersRadii;
+        final int paddingVertical;
+        final int paddingHorizontal;
+
+        private Metrics(TooltipStyle style, DisplayMetrics displayMetrics) {
+            density = displayMetrics.density;
+            scaledDensity = displayMetrics.scaledDensity;
+
+            textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, style.mTextSizeSp, displayMetrics);
+            int arrowSideSize = dpToPx(style.mArrowSideSizeDp, displayMetrics);
+            this.arrowSideSize = (arrowSideSize & 1) == 0 ? arrowSideSize : arrowSideSize - 1; // Ensure it's even.
+            roundedCornersRadii = dpToPx(style.mRoundedCornersRadiiDp, displayMetrics);
+            paddingVertical = dpToPx(style.mPaddingVerticalDp, displayMetrics);
+            paddingHorizontal = dpToPx(style.mPaddingHorizontalDp, displayMetrics);
+        }
+
+        private static int dpToPx(int dpValue, DisplayMetrics displayMetrics) {
+            return (int)TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dpValue, displayMetrics);
+        }
+    }
+
+    public static class Builder {
+        private int mTextSizeSp = 15;
+        private int mArrowSideSizeDp = 10;
+        private int mRoundedCornersRadiiDp = 4;
+        private int mPaddingVerticalDp = 7;
+        private int mPaddingHorizontalDp = 14;
+
+        public Builder() {
+        }
+
+        public Builder(TooltipStyle style) {
+            mTextSizeSp = style.mTextSizeSp;
+            mArrowSideSizeDp = style.mArrowSideSizeDp;
+            mRoundedCornersRadiiDp = style.mRoundedCornersRadiiDp;
+            mPaddingVerticalDp = style.mPaddingVerticalDp;
+            mPaddingHorizontalDp = style.mPaddingHorizontalDp;
+        }
+
+        public Builder setTextSizeSp(int textSizeSp) {
+            mTextSizeSp = textSizeSp;
+            return this;
+        }
+
+        public Builder setArrowSideSizeDp(int arrowSideSizeDp) {
+            mArrowSideSizeDp = arrowSideSizeDp;
+            return this;
+        }
+
+        public Builder setRoundedCornersRadiiDp(int roundedCornersRadiiDp) {
+            mRoundedCornersRadiiDp = roundedCornersRadiiDp;
+            return this;
+        }
+
+        public Builder setPaddingVerticalDp(int paddingVerticalDp) {
+            mPaddingVerticalDp = paddingVerticalDp;
+            return this;
+        }
+
+        public Builder setPaddingHorizontalDp(int paddingHorizontalDp) {
+            mPaddingHorizontalDp = paddingHorizontalDp;
+            return this;
+        }
+
+        public TooltipStyle build() {
+            return new TooltipStyle(this);
+        }
+    }
+}
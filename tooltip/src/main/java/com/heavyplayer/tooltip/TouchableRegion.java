@@ -0,0 +1,139 @@
+package com.heavyplayer.tooltip;
+
+import android.graphics.Region;
+import android.view.ViewTreeObserver;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Limits the part of a window that takes touches to a region, so touches on the rest of it go to the window below, as
+ * if it wasn't there.
+ *
+ * The SDK has no public way to do this, so it goes through the framework's hidden internal insets listener, like the
+ * platform's own input methods do. When that isn't available, {@link #create()} returns null and the whole window
+ * keeps taking touches.
+ */
+final class TouchableRegion implements InvocationHandler {
+    // ViewTreeObserver.InternalInsetsInfo.TOUCHABLE_INSETS_REGION.
+    private static final int TOUCHABLE_INSETS_REGION = 3;
+
+    private static boolean sResolved = false;
+    private static Class<?> sListenerClass;
+    private static Method sAddListener;
+    private static Method sRemoveListener;
+    private static Method sSetTouchableInsets;
+    private static Field sTouchableRegion;
+
+    private final Region mRegion = new Region();
+    private final Object mListener;
+    private ViewTreeObserver mObserver;
+    private Runnable mOnComputeListener;
+
+    /**
+     * @return a touchable region, or null if windows can't have one on this platform
+     */
+    static TouchableRegion create() {
+        return resolve() ? new TouchableRegion() : null;
+    }
+
+    private static synchronized boolean resolve() {
+        if(!sResolved) {
+            sResolved = true;
+            try {
+                Class<?> infoClass = Class.forName("android.view.ViewTreeObserver$InternalInsetsInfo");
+                Class<?> listenerClass = Class.forName("android.view.ViewTreeObserver$OnComputeInternalInsetsListener");
+                sAddListener = ViewTreeObserver.class.getMethod("addOnComputeInternalInsetsListener", listenerClass);
+                sRemoveListener = ViewTreeObserver.class.getMethod("removeOnComputeInternalInsetsListener", listenerClass);
+                sSetTouchableInsets = infoClass.getMethod("setTouchableInsets", int.class);
+                sTouchableRegion = infoClass.getField("touchableRegion");
+                sListenerClass = listenerClass;
+            }
+            catch(Exception e) {
+                sListenerClass = null;
+            }
+        }
+        return sListenerClass != null;
+    }
+
+    private TouchableRegion() {
+        mListener = Proxy.newProxyInstance(sListenerClass.getClassLoader(), new Class<?>[]{sListenerClass}, this);
+    }
+
+    /**
+     * Start limiting the touchable part of the window of the given observer, which must be alive.
+     */
+    void attach(ViewTreeObserver observer) {
+        detach();
+        try {
+            sAddListener.invoke(observer, mListener);
+            mObserver = observer;
+        }
+        catch(Exception e) {
+            // The whole window keeps taking touches.
+        }
+    }
+
+    void detach() {
+        if(mObserver == null)
+            return;
+
+        try {
+            if(mObserver.isAlive())
+                sRemoveListener.invoke(mObserver, mListener);
+        }
+        catch(Exception e) {
+            // The observer goes away with its window anyway.
+        }
+        mObserver = null;
+    }
+
+    /**
+     * Set the listener invoked right before the region is handed to the window, once per traversal, so the region can
+     * be rebuilt there once instead of on every change.
+     */
+    void setOnComputeListener(Runnable listener) {
+        mOnComputeListener = listener;
+    }
+
+    /**
+     * Set the touchable part to a rectangle, in the window's coordinates. Applied on the window's next traversal.
+     */
+    void set(int left, int top, int right, int bottom) {
+        mRegion.set(left, top, right, bottom);
+    }
+
+    /**
+     * Add a rectangle to the touchable part, in the window's coordinates.
+     */
+    void add(int left, int top, int right, int bottom) {
+        mRegion.op(left, top, right, bottom, Region.Op.UNION);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if("onComputeInternalInsets".equals(name)) {
+            if(mOnComputeListener != null)
+                mOnComputeListener.run();
+
+            Object info = args[0];
+            sSetTouchableInsets.invoke(info, TOUCHABLE_INSETS_REGION);
+            ((Region)sTouchableRegion.get(info)).set(mRegion);
+            return null;
+        }
+        // The observer keeps its listeners in a list, which compares them.
+        else if("equals".equals(name)) {
+            return proxy == args[0];
+        }
+        else if("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        }
+        else if("toString".equals(name)) {
+            return "TouchableRegion@" + Integer.toHexString(System.identityHashCode(proxy));
+        }
+        return null;
+    }
+}
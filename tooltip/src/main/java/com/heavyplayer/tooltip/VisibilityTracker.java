@@ -0,0 +1,147 @@
+package com.heavyplayer.tooltip;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Tells whether a target view is visible enough, with some hysteresis so a target at the edge of a scrolling list
+ * doesn't make its tooltip flicker.
+ *
+ * The view's visible part is only measured again, which walks its parents, after it moved or something was laid out.
+ * Hiding the view or one of its parents lays nothing out, so whether they're all visible is checked on every update,
+ * which only reads their flags.
+ * A target becomes visible once the given fraction of it is, and hidden once less than half that fraction is. Either
+ * change only happens after it held for the dwell time.
+ */
+final class VisibilityTracker implements ViewTreeObserver.OnGlobalLayoutListener {
+    private float mMinVisibleFraction = 0f;
+    private long mDwellMillis = 0;
+
+    private View mView;
+    private final Rect mVisibleRect = new Rect();
+    private boolean mDirty = true;
+    private boolean mShown = false;
+    private boolean mRawVisible = false;
+
+    private boolean mInitialized = false;
+    private boolean mVisible = false;
+    private long mPendingSince = -1;
+
+    void setThresholds(float minVisibleFraction, long dwellMillis) {
+        mMinVisibleFraction = minVisibleFraction;
+        mDwellMillis = dwellMillis;
+        mDirty = true;
+    }
+
+    void setView(View view) {
+        if(mView != view) {
+            mView = view;
+            mDirty = true;
+        }
+    }
+
+    /**
+     * Measure the visible part again on the next update, eg. because the view moved.
+     */
+    void invalidate() {
+        mDirty = true;
+    }
+
+    /**
+     * Start over with the given visibility, eg. when the target is known to be out of view.
+     */
+    void reset(boolean visible) {
+        mVisible = mRawVisible = visible;
+        mInitialized = true;
+        mPendingSince = -1;
+        mDirty = true;
+    }
+
+    /**
+     * Forget everything, eg. before the tooltip is shown again, so the first update applies right away.
+     */
+    void clear() {
+        mView = null;
+        mInitialized = false;
+        mPendingSince = -1;
+        mDirty = true;
+    }
+
+    boolean isVisible() {
+        return mVisible;
+    }
+
+    /**
+     * @return whether the target is considered visible
+     */
+    boolean update() {
+        boolean shown = isShown();
+        if(shown != mShown) {
+            mShown = shown;
+            mDirty = true;
+        }
+
+        if(mDirty) {
+            mDirty = false;
+            mRawVisible = measureVisible();
+        }
+
+        if(mRawVisible == mVisible) {
+            mPendingSince = -1;
+        }
+        else if(!mInitialized || mDwellMillis <= 0) {
+            mVisible = mRawVisible;
+            mPendingSince = -1;
+        }
+        else {
+            long now = SystemClock.uptimeMillis();
+            if(mPendingSince < 0)
+                mPendingSince = now;
+            if(now - mPendingSince >= mDwellMillis) {
+                mVisible = mRawVisible;
+                mPendingSince = -1;
+            }
+        }
+        mInitialized = true;
+
+        return mVisible;
+    }
+
+    /**
+     * Get how long until a pending change applies, or -1 if there's none.
+     */
+    long getPendingDelay() {
+        if(mPendingSince < 0)
+            return -1;
+        return Math.max(0, mPendingSince + mDwellMillis - SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Whether the view or one of its parents was shown or hidden since the last update, which is cheap to tell.
+     */
+    boolean hasShownChanged() {
+        return isShown() != mShown;
+    }
+
+    private boolean isShown() {
+        return mView != null && mView.getWindowVisibility() == View.VISIBLE && mView.isShown();
+    }
+
+    private boolean measureVisible() {
+        if(!mShown || !mView.getLocalVisibleRect(mVisibleRect))
+            return false;
+
+        long area = (long)mView.getWidth() * mView.getHeight();
+        long visibleArea = (long)mVisibleRect.width() * mVisibleRect.height();
+        float minVisibleFraction = mVisible ? mMinVisibleFraction / 2 : mMinVisibleFraction;
+        return area <= 0 || visibleArea >= minVisibleFraction * area;
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        // Parents may have been resized or hidden, changing what's visible of the view.
+        mDirty = true;
+    }
+}